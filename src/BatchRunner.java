@@ -0,0 +1,650 @@
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless entry point that runs the same pipeline as the classifier buttons over one
+ * CSV file or a directory of them and writes metrics, confusion matrices and ROC
+ * points as JSON or CSV. Datasets are processed --jobs at a time; within a dataset
+ * every (feature set, classifier) configuration runs in parallel.
+ *
+ * Usage:
+ *   java -cp build;lib/* BatchRunner --data data/ [--features pairs|all|"A,B;C,D"]
+ *        [--classifiers rf,j48,logistic,smo,nb,ibk,vote,stacking] [--folds 10] [--seed 1]
+ *        [--format json|csv] [--out results] [--jobs 2] [--balance oversample|weight]
+ *        [--save-models dir] [--metrics file.prom] [--knn k=5,distance=manhattan,search=kdtree]
+ *        [--tuned tuning.properties] [--repetitions 200] [--resampling cv|bootstrap]
+ *
+ * With --save-models, each final model is written together with its header so
+ * PredictionService can serve it. With --metrics, per-stage timings are written in
+ * the Prometheus text format once the run finishes; they are also exposed over JMX
+ * while it runs. --knn configures "IBk (k-NN)" (see KnnSettings); by default it is
+ * IBk's 1-NN with normalized Euclidean distance, searched with a KD-tree. --tuned
+ * applies the best configurations saved by a hyperparameter search (see
+ * HyperparameterSearch); a later --knn overrides its k-NN entry. The classifiers
+ * "vote" and "stacking" are ensembles of the other six (see EnsembleClassifier); they
+ * are only run when listed.
+ *
+ * --repetitions N adds 95% confidence intervals for accuracy, AUC, precision and
+ * recall, plus a ROC band, to every configuration (see ConfidenceIntervals). The
+ * repetitions are repeated cross-validation by default, or bootstrap with
+ * --resampling bootstrap. They run in parallel, one configuration after another, and
+ * each configuration's repetitions are streamed to a -repetitions.csv file in the
+ * output directory.
+ */
+public class BatchRunner {
+
+    private static final Map<String, String> CLASSIFIER_ALIASES = new HashMap<>();
+
+    static {
+        CLASSIFIER_ALIASES.put("rf", "Random Forest");
+        CLASSIFIER_ALIASES.put("j48", "J48 (Decision Tree)");
+        CLASSIFIER_ALIASES.put("logistic", "Logistic Regression");
+        CLASSIFIER_ALIASES.put("smo", "SMO (SVM)");
+        CLASSIFIER_ALIASES.put("nb", "Naive Bayes");
+        CLASSIFIER_ALIASES.put("ibk", "IBk (k-NN)");
+        CLASSIFIER_ALIASES.put("vote", PredictionPipeline.SOFT_VOTE_NAME);
+        CLASSIFIER_ALIASES.put("stacking", PredictionPipeline.STACKING_NAME);
+    }
+
+    private File data;
+    private String features = "pairs";
+    private List<String> classifiers = Arrays.asList(PredictionPipeline.CLASSIFIER_NAMES);
+    private int numFolds = PredictionPipeline.CV_FOLDS;
+    private long seed = PredictionPipeline.CV_SEED;
+    private String format = "json";
+    private File outputDirectory = new File("results");
+    private int jobs = 2;
+    private ClassBalancer.Mode balanceMode = ClassBalancer.Mode.OVERSAMPLE;
+    private File modelDirectory;
+    private File metricsFile;
+    private int repetitions;
+    private ConfidenceIntervals.Method resampling = ConfidenceIntervals.Method.REPEATED_CV;
+
+    private final PredictionPipeline pipeline = new PredictionPipeline(new CrossValidationEngine());
+    private ExecutorService configurationPool;
+
+    private static class RunResult {
+        List<String> features;
+        String classifierName;
+        Evaluation eval;
+        double auc;
+        double[][] rocPoints;
+        long millis;
+        String error;
+        String pipelineName;
+        ColumnStore store;
+        ConfidenceIntervals.Result intervals;
+        File repetitionsFile;
+    }
+
+    public static void main(String[] args) {
+        BatchRunner runner = new BatchRunner();
+        try {
+            runner.parseArguments(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println("Usage: BatchRunner --data <file.csv|directory> [--features pairs|all|\"A,B;C,D\"]"
+                    + " [--classifiers rf,j48,logistic,smo,nb,ibk,vote,stacking] [--folds 10] [--seed 1]"
+                    + " [--format json|csv] [--out results] [--jobs 2] [--balance oversample|weight] [--save-models dir] [--metrics file.prom]"
+                    + " [--knn k=1,distance=euclidean|manhattan|chebyshev,normalize=true,search=kdtree|linear]"
+                    + " [--tuned tuning.properties] [--repetitions 200] [--resampling cv|bootstrap]");
+            System.exit(2);
+        }
+        System.exit(runner.run() ? 0 : 1);
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--data":
+                    data = new File(value);
+                    break;
+                case "--features":
+                    features = value;
+                    break;
+                case "--classifiers":
+                    classifiers = new ArrayList<>();
+                    for (String name : value.split(",")) {
+                        String resolved = resolveClassifier(name.trim());
+                        if (resolved == null) {
+                            throw new IllegalArgumentException("Unknown classifier: " + name);
+                        }
+                        classifiers.add(resolved);
+                    }
+                    break;
+                case "--folds":
+                    numFolds = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--format":
+                    format = value.toLowerCase(Locale.ROOT);
+                    if (!format.equals("json") && !format.equals("csv")) {
+                        throw new IllegalArgumentException("Unknown format: " + value);
+                    }
+                    break;
+                case "--out":
+                    outputDirectory = new File(value);
+                    break;
+                case "--metrics":
+                    metricsFile = new File(value);
+                    break;
+                case "--save-models":
+                    modelDirectory = new File(value);
+                    break;
+                case "--balance":
+                    try {
+                        balanceMode = ClassBalancer.Mode.valueOf(value.toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException ex) {
+                        throw new IllegalArgumentException("Unknown balancing mode: " + value);
+                    }
+                    break;
+                case "--knn":
+                    pipeline.setKnnSettings(KnnSettings.parse(value));
+                    break;
+                case "--tuned":
+                    File tuningFile = new File(value);
+                    if (!tuningFile.isFile()) {
+                        throw new IllegalArgumentException("Tuning file not found: " + value);
+                    }
+                    try {
+                        pipeline.applyTuning(HyperparameterSearch.loadTuning(tuningFile));
+                    } catch (IOException ex) {
+                        throw new IllegalArgumentException("Cannot read tuning file: " + ex.getMessage());
+                    }
+                    break;
+                case "--repetitions":
+                    repetitions = Integer.parseInt(value);
+                    if (repetitions < 0) {
+                        throw new IllegalArgumentException("--repetitions must not be negative.");
+                    }
+                    break;
+                case "--resampling":
+                    if (value.equalsIgnoreCase("cv")) {
+                        resampling = ConfidenceIntervals.Method.REPEATED_CV;
+                    } else if (value.equalsIgnoreCase("bootstrap")) {
+                        resampling = ConfidenceIntervals.Method.BOOTSTRAP;
+                    } else {
+                        throw new IllegalArgumentException("Unknown resampling method: " + value);
+                    }
+                    break;
+                case "--jobs":
+                    jobs = Math.max(1, Integer.parseInt(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+        if (data == null) {
+            throw new IllegalArgumentException("--data is required.");
+        }
+    }
+
+    static String resolveClassifier(String name) {
+        String alias = CLASSIFIER_ALIASES.get(name.toLowerCase(Locale.ROOT));
+        if (alias != null) {
+            return alias;
+        }
+        for (String known : PredictionPipeline.CLASSIFIER_NAMES) {
+            if (known.equalsIgnoreCase(name)) {
+                return known;
+            }
+        }
+        return null;
+    }
+
+    private boolean run() {
+        List<File> datasets = new ArrayList<>();
+        if (data.isDirectory()) {
+            File[] files = data.listFiles((dir, name) -> name.toLowerCase(Locale.ROOT).endsWith(".csv"));
+            if (files != null) {
+                Arrays.sort(files);
+                datasets.addAll(Arrays.asList(files));
+            }
+        } else {
+            datasets.add(data);
+        }
+        if (datasets.isEmpty()) {
+            System.err.println("No CSV files found in " + data);
+            return false;
+        }
+
+        pipeline.metrics().registerMBean();
+        outputDirectory.mkdirs();
+        if (modelDirectory != null) {
+            modelDirectory.mkdirs();
+        }
+        configurationPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        ExecutorService datasetPool = Executors.newFixedThreadPool(jobs);
+        boolean success = true;
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (File dataset : datasets) {
+                futures.add(datasetPool.submit(() -> processDataset(dataset)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    success &= futures.get(i).get();
+                } catch (Exception ex) {
+                    System.err.println(datasets.get(i) + ": " + ex.getMessage());
+                    success = false;
+                }
+            }
+        } finally {
+            datasetPool.shutdownNow();
+            configurationPool.shutdownNow();
+        }
+
+        if (metricsFile != null) {
+            try {
+                Files.write(metricsFile.toPath(), pipeline.metrics().toPrometheusText().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException ex) {
+                System.err.println("Could not write metrics: " + ex.getMessage());
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    private boolean processDataset(File file) {
+        long start = System.nanoTime();
+        try {
+            StreamingCsvLoader loader = new StreamingCsvLoader("Migratory status");
+            loader.includeColumn("Family");
+            DatasetCache cache = new DatasetCache();
+            PipelineMetrics.Sample cachedSample = pipeline.metrics().begin(PipelineMetrics.LOAD_CACHED, null);
+            ColumnStore store = cache.get(file, loader.optionsKey());
+            if (store != null) {
+                cachedSample.end(store.numRows());
+            } else {
+                PipelineMetrics.Sample loadSample = pipeline.metrics().begin(PipelineMetrics.LOAD, null);
+                store = loader.load(file);
+                loadSample.end(store.numRows());
+                System.out.println(file.getName() + ": " + loader.throughputSummary());
+                try {
+                    cache.put(file, loader.optionsKey(), store, loader.getElapsedNanos());
+                } catch (IOException ex) {
+                    System.err.println("Could not write the dataset cache: " + ex.getMessage());
+                }
+            }
+
+            ClassBalancer.Sample balanced = pipeline.balanceClasses(store, balanceMode);
+            ColumnStore loadedStore = store;
+            List<List<String>> featureSets = featureSets(store);
+            List<Future<RunResult>> futures = new ArrayList<>();
+            for (List<String> featureSet : featureSets) {
+                Instances balancedData;
+                try {
+                    balancedData = pipeline.projectFeatures(store, featureSet, balanced);
+                } catch (Exception ex) {
+                    for (String classifierName : classifiers) {
+                        RunResult failed = new RunResult();
+                        failed.features = featureSet;
+                        failed.classifierName = pipeline.configuredName(classifierName);
+                        failed.error = ex.getMessage();
+                        futures.add(CompletableFuture.completedFuture(failed));
+                    }
+                    continue;
+                }
+                for (String classifierName : classifiers) {
+                    futures.add(configurationPool.submit(() -> evaluate(file, loadedStore, featureSet, classifierName,
+                            balancedData)));
+                }
+            }
+
+            List<RunResult> results = new ArrayList<>();
+            boolean success = true;
+            for (Future<RunResult> future : futures) {
+                RunResult result = future.get();
+                if (result.error != null) {
+                    System.err.println(file.getName() + ": " + result.classifierName + " on "
+                            + result.features + " failed: " + result.error);
+                    success = false;
+                }
+                results.add(result);
+            }
+
+            String baseName = file.getName().replaceFirst("(?i)\\.csv$", "");
+            if (repetitions > 0) {
+                for (RunResult result : results) {
+                    if (result.error == null && !estimateIntervals(baseName, result)) {
+                        success = false;
+                    }
+                }
+            }
+            if (format.equals("json")) {
+                writeJson(new File(outputDirectory, baseName + ".json"), file, store, results);
+            } else {
+                writeCsv(baseName, file, results);
+            }
+            System.out.printf("%s: %d configurations in %d ms%n", file.getName(), results.size(),
+                    (System.nanoTime() - start) / 1_000_000);
+            return success;
+
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            System.err.println(file + ": " + ex.getMessage());
+            return false;
+        }
+    }
+
+    private List<List<String>> featureSets(ColumnStore store) {
+        List<String> numeric = store.numericAttributeNames();
+        List<List<String>> sets = new ArrayList<>();
+        if (features.equals("pairs")) {
+            for (int i = 0; i < numeric.size(); i++) {
+                for (int j = i + 1; j < numeric.size(); j++) {
+                    sets.add(Arrays.asList(numeric.get(i), numeric.get(j)));
+                }
+            }
+        } else if (features.equals("all")) {
+            sets.add(numeric);
+        } else {
+            for (String set : features.split(";")) {
+                List<String> names = new ArrayList<>();
+                for (String name : set.split(",")) {
+                    names.add(name.trim());
+                }
+                sets.add(names);
+            }
+        }
+        return sets;
+    }
+
+    private RunResult evaluate(File dataset, ColumnStore store, List<String> featureSet, String classifierName,
+                               Instances balancedData) {
+        RunResult result = new RunResult();
+        result.features = featureSet;
+        result.classifierName = pipeline.configuredName(classifierName);
+        long start = System.nanoTime();
+        try {
+            ModelCache.Entry trained = pipeline.trainAndEvaluate(classifierName, balancedData, numFolds, seed, null);
+            result.eval = trained.eval;
+            result.rocPoints = trained.rocPoints;
+            result.auc = trained.auc;
+            if (repetitions > 0) {
+                result.pipelineName = classifierName;
+                result.store = store;
+            }
+            if (modelDirectory != null) {
+                String name = dataset.getName().replaceFirst("(?i)\\.csv$", "") + "-"
+                        + String.join("_", featureSet) + "-" + result.classifierName;
+                File modelFile = new File(modelDirectory, name.replaceAll("[^A-Za-z0-9._-]+", "_") + ".model");
+                SerializationHelper.writeAll(modelFile.getPath(),
+                        new Object[]{trained.model, new Instances(balancedData, 0)});
+            }
+        } catch (Exception ex) {
+            result.error = ex.getMessage() != null ? ex.getMessage() : ex.toString();
+        }
+        result.millis = (System.nanoTime() - start) / 1_000_000;
+        return result;
+    }
+
+    // Each configuration's repetitions use every core, so configurations take turns.
+    private boolean estimateIntervals(String baseName, RunResult result) {
+        String name = baseName + "-" + String.join("_", result.features) + "-" + result.classifierName;
+        result.repetitionsFile = new File(outputDirectory,
+                name.replaceAll("[^A-Za-z0-9._-]+", "_") + "-repetitions.csv");
+        try {
+            ConfidenceIntervals intervals = new ConfidenceIntervals(pipeline,
+                    Runtime.getRuntime().availableProcessors(), 0.95);
+            result.intervals = intervals.estimate(result.store, result.features, balanceMode, result.pipelineName,
+                    resampling, repetitions, result.repetitionsFile, new ConfidenceIntervals.Listener() {
+                        @Override
+                        public void repetitionCompleted(int completed, int total) {
+                        }
+
+                        @Override
+                        public boolean isCancelled() {
+                            return false;
+                        }
+                    });
+            return true;
+        } catch (Exception ex) {
+            System.err.println(baseName + ": confidence intervals for " + result.classifierName + " on "
+                    + result.features + " failed: " + ex.getMessage());
+            return false;
+        } finally {
+            result.store = null;
+        }
+    }
+
+    private void writeJson(File output, File dataset, ColumnStore store, List<RunResult> results) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8))) {
+            out.println("{");
+            out.printf("  \"dataset\": %s,%n", quote(dataset.getPath()));
+            out.printf("  \"rows\": %d,%n", store.numRows());
+            out.printf("  \"folds\": %d,%n", numFolds);
+            out.printf("  \"seed\": %d,%n", seed);
+            out.println("  \"results\": [");
+            for (int r = 0; r < results.size(); r++) {
+                RunResult result = results.get(r);
+                out.println("    {");
+                out.printf("      \"features\": %s,%n", quoteAll(result.features));
+                out.printf("      \"classifier\": %s,%n", quote(result.classifierName));
+                out.printf("      \"millis\": %d,%n", result.millis);
+                if (result.error != null) {
+                    out.printf("      \"error\": %s%n", quote(result.error));
+                } else {
+                    Evaluation eval = result.eval;
+                    Instances header = eval.getHeader();
+                    out.printf("      \"accuracy\": %s,%n", number(eval.pctCorrect() / 100));
+                    out.printf("      \"kappa\": %s,%n", number(eval.kappa()));
+                    out.printf("      \"auc\": %s,%n", number(result.auc));
+                    out.println("      \"classes\": [");
+                    for (int c = 0; c < header.numClasses(); c++) {
+                        out.printf("        {\"label\": %s, \"precision\": %s, \"recall\": %s, \"fMeasure\": %s, \"auc\": %s}%s%n",
+                                quote(header.classAttribute().value(c)), number(eval.precision(c)),
+                                number(eval.recall(c)), number(eval.fMeasure(c)), number(eval.areaUnderROC(c)),
+                                c < header.numClasses() - 1 ? "," : "");
+                    }
+                    out.println("      ],");
+                    double[][] matrix = eval.confusionMatrix();
+                    out.print("      \"confusionMatrix\": [");
+                    for (int i = 0; i < matrix.length; i++) {
+                        out.print(i > 0 ? ", [" : "[");
+                        for (int j = 0; j < matrix[i].length; j++) {
+                            out.print((j > 0 ? ", " : "") + (long) matrix[i][j]);
+                        }
+                        out.print("]");
+                    }
+                    out.println("],");
+                    out.printf("      \"roc\": {\"fpr\": %s, \"tpr\": %s}%s%n",
+                            numbers(result.rocPoints[0]), numbers(result.rocPoints[1]),
+                            result.intervals != null ? "," : "");
+                    if (result.intervals != null) {
+                        ConfidenceIntervals.Result intervals = result.intervals;
+                        out.println("      \"intervals\": {");
+                        out.printf("        \"resampling\": %s,%n", quote(resampling == ConfidenceIntervals.Method.BOOTSTRAP
+                                ? "bootstrap" : "cv"));
+                        out.printf("        \"repetitions\": %d,%n", intervals.repetitions);
+                        out.printf("        \"level\": %s,%n", number(intervals.level));
+                        out.printf("        \"file\": %s,%n", quote(result.repetitionsFile.getPath()));
+                        for (ConfidenceIntervals.Interval interval : intervals.intervals) {
+                            out.printf("        %s: {\"mean\": %s, \"lower\": %s, \"upper\": %s},%n",
+                                    quote(interval.metric), number(interval.mean), number(interval.lower),
+                                    number(interval.upper));
+                        }
+                        out.printf("        \"rocBand\": {\"fpr\": %s, \"lower\": %s, \"median\": %s, \"upper\": %s}%n",
+                                numbers(intervals.fpr), numbers(intervals.tprLower), numbers(intervals.tprMedian),
+                                numbers(intervals.tprUpper));
+                        out.println("      }");
+                    }
+                }
+                out.println(r < results.size() - 1 ? "    }," : "    }");
+            }
+            out.println("  ]");
+            out.println("}");
+        }
+    }
+
+    private void writeCsv(String baseName, File dataset, List<RunResult> results) throws IOException {
+        File metricsFile = new File(outputDirectory, baseName + "-metrics.csv");
+        File confusionFile = new File(outputDirectory, baseName + "-confusion.csv");
+        File rocFile = new File(outputDirectory, baseName + "-roc.csv");
+        try (PrintWriter metrics = new PrintWriter(Files.newBufferedWriter(metricsFile.toPath(), StandardCharsets.UTF_8));
+             PrintWriter confusion = new PrintWriter(Files.newBufferedWriter(confusionFile.toPath(), StandardCharsets.UTF_8));
+             PrintWriter roc = new PrintWriter(Files.newBufferedWriter(rocFile.toPath(), StandardCharsets.UTF_8))) {
+            metrics.println("dataset,features,classifier,folds,seed,accuracy,kappa,auc,weighted_precision,weighted_recall,millis,error");
+            confusion.println("dataset,features,classifier,actual,predicted,count");
+            roc.println("dataset,features,classifier,fpr,tpr");
+
+            for (RunResult result : results) {
+                String prefix = csv(dataset.getName()) + "," + csv(String.join(";", result.features)) + ","
+                        + csv(result.classifierName);
+                if (result.error != null) {
+                    metrics.println(prefix + "," + numFolds + "," + seed + ",,,,,," + result.millis + "," + csv(result.error));
+                    continue;
+                }
+
+                Evaluation eval = result.eval;
+                metrics.println(prefix + "," + numFolds + "," + seed + "," + csvNumber(eval.pctCorrect() / 100) + ","
+                        + csvNumber(eval.kappa()) + "," + csvNumber(result.auc) + ","
+                        + csvNumber(eval.weightedPrecision()) + "," + csvNumber(eval.weightedRecall()) + ","
+                        + result.millis + ",");
+
+                Instances header = eval.getHeader();
+                double[][] matrix = eval.confusionMatrix();
+                for (int i = 0; i < matrix.length; i++) {
+                    for (int j = 0; j < matrix[i].length; j++) {
+                        confusion.println(prefix + "," + csv(header.classAttribute().value(i)) + ","
+                                + csv(header.classAttribute().value(j)) + "," + (long) matrix[i][j]);
+                    }
+                }
+
+                for (int i = 0; i < result.rocPoints[0].length; i++) {
+                    roc.println(prefix + "," + csvNumber(result.rocPoints[0][i]) + "," + csvNumber(result.rocPoints[1][i]));
+                }
+            }
+        }
+
+        if (repetitions > 0) {
+            writeIntervalsCsv(baseName, dataset, results);
+        }
+    }
+
+    private void writeIntervalsCsv(String baseName, File dataset, List<RunResult> results) throws IOException {
+        File intervalsFile = new File(outputDirectory, baseName + "-intervals.csv");
+        File bandFile = new File(outputDirectory, baseName + "-roc-band.csv");
+        try (PrintWriter intervals = new PrintWriter(Files.newBufferedWriter(intervalsFile.toPath(), StandardCharsets.UTF_8));
+             PrintWriter band = new PrintWriter(Files.newBufferedWriter(bandFile.toPath(), StandardCharsets.UTF_8))) {
+            intervals.println("dataset,features,classifier,resampling,repetitions,level,metric,mean,lower,upper");
+            band.println("dataset,features,classifier,fpr,tpr_lower,tpr_median,tpr_upper");
+
+            for (RunResult result : results) {
+                if (result.intervals == null) {
+                    continue;
+                }
+                String prefix = csv(dataset.getName()) + "," + csv(String.join(";", result.features)) + ","
+                        + csv(result.classifierName);
+                ConfidenceIntervals.Result ci = result.intervals;
+                for (ConfidenceIntervals.Interval interval : ci.intervals) {
+                    intervals.println(prefix + "," + (resampling == ConfidenceIntervals.Method.BOOTSTRAP ? "bootstrap" : "cv")
+                            + "," + ci.repetitions + "," + csvNumber(ci.level) + "," + interval.metric + ","
+                            + csvNumber(interval.mean) + "," + csvNumber(interval.lower) + "," + csvNumber(interval.upper));
+                }
+                for (int g = 0; g < ci.fpr.length; g++) {
+                    band.println(prefix + "," + csvNumber(ci.fpr[g]) + "," + csvNumber(ci.tprLower[g]) + ","
+                            + csvNumber(ci.tprMedian[g]) + "," + csvNumber(ci.tprUpper[g]));
+                }
+            }
+        }
+    }
+
+    private static String number(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return "null";
+        }
+        return Double.toString(value);
+    }
+
+    // CSV readers take an empty field as missing, where "null" would read as text.
+    private static String csvNumber(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return "";
+        }
+        return Double.toString(value);
+    }
+
+    private static String numbers(double[] values) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(number(values[i]));
+        }
+        return sb.append("]").toString();
+    }
+
+    private static String quoteAll(List<String> values) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(quote(values.get(i)));
+        }
+        return sb.append("]").toString();
+    }
+
+    private static String quote(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char ch : value.toCharArray()) {
+            switch (ch) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (ch < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) ch));
+                    } else {
+                        sb.append(ch);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String csv(String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
@@ -1,48 +1,69 @@
+import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
-import weka.classifiers.trees.RandomForest;
-import weka.classifiers.trees.J48;
-import weka.classifiers.functions.Logistic;
-import weka.classifiers.functions.SMO;
-import weka.classifiers.bayes.NaiveBayes;
-import weka.classifiers.lazy.IBk;
-import weka.core.Attribute;
-import weka.core.DenseInstance;
+import weka.classifiers.UpdateableClassifier;
 import weka.core.Instances;
-import weka.core.converters.CSVLoader;
-import weka.filters.Filter;
-import weka.filters.supervised.instance.Resample;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.renderer.xy.DeviationRenderer;
 import org.jfree.data.xy.DefaultXYDataset;
+import org.jfree.data.xy.YIntervalSeries;
+import org.jfree.data.xy.YIntervalSeriesCollection;
 
 public class BirdMigratoryStatusPredictor extends JFrame {
 
     private JTextField filePathField;
     private JButton browseButton;
-    private JComboBox<String> feature1ComboBox;
-    private JComboBox<String> feature2ComboBox;
+    private JPanel featureCheckBoxPanel;
+    private List<JCheckBox> featureCheckBoxes = new ArrayList<>();
     private JPanel classifierButtonsPanel;
     private JTextArea resultArea;
     private JPanel chartPanelContainer;
-
-    private Instances dataset;
+    private JButton cancelButton;
+    private DefaultTableModel metricsTableModel;
+
+    private ColumnStore columnStore;
+    private DatasetTail datasetTail;
+    private JCheckBox followFileCheckBox;
+    private javax.swing.Timer tailTimer;
+    private javax.swing.Timer retrainTimer;
+    private TailWorker tailWorker;
+    private ClassBalancer.Mode balanceMode = ClassBalancer.Mode.OVERSAMPLE;
     private List<String> numericFeatures;
 
-    private boolean isUpdatingFeature1 = false;
-    private boolean isUpdatingFeature2 = false;
+    private String[] classifiers = PredictionPipeline.CLASSIFIER_NAMES;
+
+    private Map<String, SwingWorker<?, ?>> runningJobs = new HashMap<>();
+    private PredictionPipeline pipeline = new PredictionPipeline(new CrossValidationEngine());
+    private DatasetCache datasetCache = new DatasetCache();
+    private ModelCache modelCache = new ModelCache();
+
+    // The last classifier trained from a button, which appended rows are applied to.
+    private String liveClassifierName;
+    private List<String> liveFeatures;
+    private Classifier liveModel;
+    private boolean liveModelIsCopy;
+    private int liveGeneration;
 
     public BirdMigratoryStatusPredictor() {
         setTitle("Bird Migratory Status Predictor");
@@ -63,18 +84,39 @@ public class BirdMigratoryStatusPredictor extends JFrame {
         filePanel.add(fileLabel);
         filePanel.add(filePathField);
         filePanel.add(browseButton);
+        followFileCheckBox = new JCheckBox("Follow file for new rows");
+        followFileCheckBox.addActionListener(e -> {
+            if (followFileCheckBox.isSelected()) {
+                tailTimer.start();
+            } else {
+                tailTimer.stop();
+            }
+        });
+        filePanel.add(followFileCheckBox);
+        JButton appendRowsButton = new JButton("Append Rows...");
+        appendRowsButton.addActionListener(new AppendRowsButtonListener());
+        filePanel.add(appendRowsButton);
         topPanel.add(filePanel);
 
         JPanel featurePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
-        JLabel feature1Label = new JLabel("Feature 1:");
-        feature1ComboBox = new JComboBox<>();
-        JLabel feature2Label = new JLabel("Feature 2:");
-        feature2ComboBox = new JComboBox<>();
-        featurePanel.add(feature1Label);
-        featurePanel.add(feature1ComboBox);
-        featurePanel.add(Box.createHorizontalStrut(20)); 
-        featurePanel.add(feature2Label);
-        featurePanel.add(feature2ComboBox);
+        JLabel featuresLabel = new JLabel("Features:");
+        featureCheckBoxPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        featurePanel.add(featuresLabel);
+        featurePanel.add(featureCheckBoxPanel);
+        featurePanel.add(Box.createHorizontalStrut(20));
+        JButton selectFeaturesButton = new JButton("Select Features...");
+        selectFeaturesButton.addActionListener(new SelectFeaturesButtonListener());
+        featurePanel.add(selectFeaturesButton);
+        JButton searchPairsButton = new JButton("Search Best Pair...");
+        searchPairsButton.addActionListener(new SearchPairsButtonListener());
+        featurePanel.add(searchPairsButton);
+        JButton intervalsButton = new JButton("Confidence Intervals...");
+        intervalsButton.addActionListener(new ConfidenceIntervalsButtonListener());
+        featurePanel.add(intervalsButton);
+        JCheckBox weightClassesCheckBox = new JCheckBox("Weight classes instead of oversampling");
+        weightClassesCheckBox.addActionListener(e -> balanceMode = weightClassesCheckBox.isSelected()
+                ? ClassBalancer.Mode.WEIGHT : ClassBalancer.Mode.OVERSAMPLE);
+        featurePanel.add(weightClassesCheckBox);
         topPanel.add(featurePanel);
 
         JPanel classifierPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
@@ -83,15 +125,33 @@ public class BirdMigratoryStatusPredictor extends JFrame {
         classifierButtonsPanel.setBorder(BorderFactory.createLineBorder(Color.GRAY));
         classifierButtonsPanel.setPreferredSize(new Dimension(1200, 50));
 
-        String[] classifiers = {"Random Forest", "J48 (Decision Tree)", "Logistic Regression",
-                "SMO (SVM)", "Naive Bayes", "IBk (k-NN)"};
-
         for (String clfName : classifiers) {
             JButton clfButton = new JButton(clfName);
             clfButton.addActionListener(new ClassifierButtonListener(clfName));
             classifierButtonsPanel.add(clfButton);
         }
 
+        JButton knnSettingsButton = new JButton("k-NN Settings...");
+        knnSettingsButton.addActionListener(new KnnSettingsButtonListener());
+        classifierButtonsPanel.add(knnSettingsButton);
+
+        JButton tuneButton = new JButton("Tune...");
+        tuneButton.addActionListener(new TuneButtonListener());
+        classifierButtonsPanel.add(tuneButton);
+
+        JButton runAllButton = new JButton("Run All");
+        runAllButton.addActionListener(new RunAllButtonListener());
+        classifierButtonsPanel.add(runAllButton);
+
+        JButton ensembleButton = new JButton("Ensemble...");
+        ensembleButton.addActionListener(new EnsembleButtonListener());
+        classifierButtonsPanel.add(ensembleButton);
+
+        cancelButton = new JButton("Cancel");
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(new CancelButtonListener());
+        classifierButtonsPanel.add(cancelButton);
+
         classifierPanel.add(classifierLabel);
         classifierPanel.add(classifierButtonsPanel);
         topPanel.add(classifierPanel);
@@ -103,7 +163,10 @@ public class BirdMigratoryStatusPredictor extends JFrame {
         resultArea = new JTextArea();
         resultArea.setEditable(false);
         JScrollPane scrollPane = new JScrollPane(resultArea);
-        splitPane.setLeftComponent(scrollPane);
+        JPanel leftPanel = new JPanel(new BorderLayout());
+        leftPanel.add(scrollPane, BorderLayout.CENTER);
+        leftPanel.add(createMetricsPanel(), BorderLayout.SOUTH);
+        splitPane.setLeftComponent(leftPanel);
 
         chartPanelContainer = new JPanel(new BorderLayout());
         splitPane.setRightComponent(chartPanelContainer);
@@ -111,8 +174,103 @@ public class BirdMigratoryStatusPredictor extends JFrame {
         add(splitPane, BorderLayout.CENTER);
 
         browseButton.addActionListener(new BrowseButtonListener());
-        feature1ComboBox.addItemListener(new FeatureSelectionListener(feature1ComboBox, feature2ComboBox, true));
-        feature2ComboBox.addItemListener(new FeatureSelectionListener(feature2ComboBox, feature1ComboBox, false));
+
+        pipeline.metrics().registerMBean();
+
+        tailTimer = new javax.swing.Timer(Integer.getInteger("bird.tail.intervalMillis", 2000), e -> pollDataset(null));
+        retrainTimer = new javax.swing.Timer(Integer.getInteger("bird.retrain.debounceMillis", 10000), e -> retrainLiveModel());
+        retrainTimer.setRepeats(false);
+
+        try {
+            pipeline.applyTuning(HyperparameterSearch.loadTuning(HyperparameterSearch.defaultTuningFile()));
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Collapsible table of per-stage timings under the result area, refreshed every
+     * second while it is open.
+     */
+    private JPanel createMetricsPanel() {
+        String[] columns = {"Stage", "Classifier", "Runs", "Total (ms)", "Mean (ms)", "Max (ms)", "Allocated (MB)", "Rows"};
+        metricsTableModel = new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable metricsTable = new JTable(metricsTableModel);
+        metricsTable.setAutoCreateRowSorter(true);
+        JScrollPane metricsScrollPane = new JScrollPane(metricsTable);
+        metricsScrollPane.setPreferredSize(new Dimension(580, 200));
+        metricsScrollPane.setVisible(false);
+
+        JToggleButton toggleButton = new JToggleButton("Show Pipeline Metrics");
+        JButton exportButton = new JButton("Export...");
+        JButton resetButton = new JButton("Reset");
+
+        javax.swing.Timer refreshTimer = new javax.swing.Timer(1000, e -> refreshMetricsTable());
+        toggleButton.addActionListener(e -> {
+            boolean open = toggleButton.isSelected();
+            toggleButton.setText(open ? "Hide Pipeline Metrics" : "Show Pipeline Metrics");
+            metricsScrollPane.setVisible(open);
+            if (open) {
+                refreshMetricsTable();
+                refreshTimer.start();
+            } else {
+                refreshTimer.stop();
+            }
+            revalidate();
+        });
+        resetButton.addActionListener(e -> {
+            pipeline.metrics().reset();
+            refreshMetricsTable();
+        });
+        exportButton.addActionListener(e -> exportMetrics());
+
+        JPanel header = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        header.add(toggleButton);
+        header.add(exportButton);
+        header.add(resetButton);
+
+        JPanel metricsPanel = new JPanel(new BorderLayout());
+        metricsPanel.add(header, BorderLayout.NORTH);
+        metricsPanel.add(metricsScrollPane, BorderLayout.CENTER);
+        return metricsPanel;
+    }
+
+    private void refreshMetricsTable() {
+        metricsTableModel.setRowCount(0);
+        for (PipelineMetrics.StageStats stats : pipeline.metrics().snapshot()) {
+            metricsTableModel.addRow(new Object[]{
+                    stats.stage,
+                    stats.classifier,
+                    stats.count,
+                    String.format("%.1f", stats.totalNanos / 1e6),
+                    String.format("%.1f", stats.totalNanos / 1e6 / stats.count),
+                    String.format("%.1f", stats.maxNanos / 1e6),
+                    String.format("%.1f", stats.allocatedBytes / 1e6),
+                    stats.rows
+            });
+        }
+    }
+
+    private void exportMetrics() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setSelectedFile(new File("bird-metrics.prom"));
+        if (fileChooser.showSaveDialog(BirdMigratoryStatusPredictor.this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try {
+            java.nio.file.Files.write(fileChooser.getSelectedFile().toPath(),
+                    pipeline.metrics().toPrometheusText().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
+                    "Error exporting metrics: " + ex.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        }
     }
 
     private class BrowseButtonListener implements ActionListener {
@@ -127,377 +285,1426 @@ public class BirdMigratoryStatusPredictor extends JFrame {
             if (returnVal == JFileChooser.APPROVE_OPTION) {
                 File file = fileChooser.getSelectedFile();
                 filePathField.setText(file.getAbsolutePath());
-                try {
+                browseButton.setEnabled(false);
+                new LoadWorker(file).execute();
+            }
+        }
+    }
 
-                    CSVLoader loader = new CSVLoader();
-                    loader.setFieldSeparator(","); 
-                    loader.setSource(file);
-                    dataset = loader.getDataSet();
+    private class LoadWorker extends SwingWorker<ColumnStore, Void> {
+        private File file;
+        private StreamingCsvLoader loader = new StreamingCsvLoader("Migratory status");
+        private String loadSummary;
 
-                    System.out.println("Loaded dataset: " + dataset.numInstances() + " instances, " + dataset.numAttributes() + " attributes.");
+        public LoadWorker(File file) {
+            this.file = file;
+            loader.includeColumn("Family");
+        }
 
-                    Attribute migratoryAttr = dataset.attribute("Migratory status");
-                    if (migratoryAttr == null) {
-                        throw new Exception("Attribute 'Migratory status' not found in the dataset.");
-                    }
-                    if (!migratoryAttr.isNominal()) {
-                        throw new Exception("'Migratory status' attribute must be nominal.");
-                    }
-                    dataset.setClassIndex(migratoryAttr.index());
-
-                    numericFeatures.clear();
-                    feature1ComboBox.removeAllItems();
-                    feature2ComboBox.removeAllItems();
-                    for (int i = 0; i < dataset.numAttributes(); i++) {
-                        if (i != dataset.classIndex() && dataset.attribute(i).isNumeric()) {
-                            String attrName = dataset.attribute(i).name();
-                            numericFeatures.add(attrName);
-                            feature1ComboBox.addItem(attrName);
-                            feature2ComboBox.addItem(attrName);
-                        }
-                    }
+        private long loadedLength;
 
-                    if (numericFeatures.isEmpty()) {
-                        JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
-                                "No numeric features available in the dataset.",
-                                "Error", JOptionPane.ERROR_MESSAGE);
-                        return;
-                    }
+        @Override
+        protected ColumnStore doInBackground() throws Exception {
+            loadedLength = file.length();
+            long start = System.nanoTime();
+            PipelineMetrics.Sample cachedSample = pipeline.metrics().begin(PipelineMetrics.LOAD_CACHED, null);
+            ColumnStore store = datasetCache.get(file, loader.optionsKey());
+            if (store != null) {
+                cachedSample.end(store.numRows());
+                long warmNanos = System.nanoTime() - start;
+                loadSummary = String.format("Loaded %d rows from the dataset cache in %d ms (cold load took %d ms, %.1fx faster)",
+                        store.numRows(), warmNanos / 1_000_000, datasetCache.getColdLoadNanos() / 1_000_000,
+                        (double) datasetCache.getColdLoadNanos() / Math.max(warmNanos, 1));
+                return store;
+            }
 
-                    if (feature1ComboBox.getItemCount() > 0) {
-                        feature1ComboBox.setSelectedIndex(0);
-                    }
-                    if (feature2ComboBox.getItemCount() > 1) {
-                        feature2ComboBox.setSelectedIndex(1);
-                    }
+            PipelineMetrics.Sample loadSample = pipeline.metrics().begin(PipelineMetrics.LOAD, null);
+            store = loader.load(file);
+            loadSample.end(store.numRows());
+            loadSummary = loader.throughputSummary() + " (cold load)";
+            try {
+                datasetCache.put(file, loader.optionsKey(), store, loader.getElapsedNanos());
+            } catch (IOException ex) {
+                System.err.println("Could not write the dataset cache: " + ex.getMessage());
+            }
+            return store;
+        }
 
-                } catch (Exception ex) {
-                    ex.printStackTrace();
+        @Override
+        protected void done() {
+            browseButton.setEnabled(true);
+            try {
+                columnStore = get();
+                datasetTail = new DatasetTail(file, columnStore, loadedLength);
+                liveClassifierName = null;
+                liveModel = null;
+                liveGeneration++;
+
+                System.out.println(loadSummary);
+                resultArea.setText(loadSummary + "\n");
+
+                numericFeatures.clear();
+                numericFeatures.addAll(columnStore.numericAttributeNames());
+                featureCheckBoxPanel.removeAll();
+                featureCheckBoxes.clear();
+                for (String attrName : columnStore.featureNames()) {
+                    JCheckBox checkBox = new JCheckBox(attrName);
+                    featureCheckBoxes.add(checkBox);
+                    featureCheckBoxPanel.add(checkBox);
+                }
+                featureCheckBoxPanel.revalidate();
+                featureCheckBoxPanel.repaint();
+
+                if (numericFeatures.isEmpty()) {
                     JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
-                            "Error loading dataset: " + ex.getMessage(),
+                            "No numeric features available in the dataset.",
                             "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
                 }
+
+                // Start with the first two numeric features, as before.
+                setSelectedFeatures(numericFeatures.subList(0, Math.min(2, numericFeatures.size())));
+
+            } catch (Exception ex) {
+                Throwable cause = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+                cause.printStackTrace();
+                JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
+                        "Error loading dataset: " + cause.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
             }
         }
     }
 
-    private class FeatureSelectionListener implements ItemListener {
-        private JComboBox<String> sourceComboBox;
-        private JComboBox<String> targetComboBox;
-        private boolean isFeature1;
+    private List<String> selectedFeatures() {
+        List<String> selected = new ArrayList<>();
+        for (JCheckBox checkBox : featureCheckBoxes) {
+            if (checkBox.isSelected()) {
+                selected.add(checkBox.getText());
+            }
+        }
+        return selected;
+    }
 
-        public FeatureSelectionListener(JComboBox<String> source, JComboBox<String> target, boolean isFeature1) {
-            this.sourceComboBox = source;
-            this.targetComboBox = target;
-            this.isFeature1 = isFeature1;
+    private void setSelectedFeatures(List<String> features) {
+        for (JCheckBox checkBox : featureCheckBoxes) {
+            checkBox.setSelected(features.contains(checkBox.getText()));
+        }
+    }
+
+    private class ClassifierButtonListener implements ActionListener {
+        private String classifierName;
+
+        public ClassifierButtonListener(String name) {
+            this.classifierName = name;
         }
 
         @Override
-        public void itemStateChanged(ItemEvent e) {
-            if (e.getStateChange() == ItemEvent.SELECTED) {
-                String selectedFeature = (String) sourceComboBox.getSelectedItem();
-                if (selectedFeature == null) return;
+        public void actionPerformed(ActionEvent e) {
+            if (!isSelectionValid()) {
+                return;
+            }
 
-                if (isFeature1 && isUpdatingFeature1) return;
-                if (!isFeature1 && isUpdatingFeature2) return;
+            List<String> features = selectedFeatures();
 
-                try {
-                    if (isFeature1) {
-                        isUpdatingFeature2 = true;
-                        updateTargetComboBox(targetComboBox, selectedFeature, feature1ComboBox.getSelectedItem());
-                        isUpdatingFeature2 = false;
-                    } else {
-                        isUpdatingFeature1 = true;
-                        updateTargetComboBox(targetComboBox, selectedFeature, feature2ComboBox.getSelectedItem());
-                        isUpdatingFeature1 = false;
-                    }
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                }
+            String jobKey = classifierName + "|" + String.join("|", features);
+            if (isAlreadyRunning(jobKey, classifierName)) {
+                return;
             }
+
+            TrainingWorker worker = new TrainingWorker(jobKey, classifierName, features);
+            runningJobs.put(jobKey, worker);
+            cancelButton.setEnabled(true);
+            resultArea.setText("Training " + classifierName + " on " + String.join(", ", features) + "...\n");
+            worker.execute();
         }
+    }
 
-        private void updateTargetComboBox(JComboBox<String> targetComboBox, String selectedFeature, Object currentSelection) {
+    private class RunAllButtonListener implements ActionListener {
 
-            targetComboBox.removeAllItems();
-            for (String feature : numericFeatures) {
-                if (!feature.equals(selectedFeature)) {
-                    targetComboBox.addItem(feature);
-                }
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (!isSelectionValid()) {
+                return;
             }
 
-            if (currentSelection != null && !selectedFeature.equals(currentSelection.toString())) {
-                targetComboBox.setSelectedItem(currentSelection.toString());
-            } else if (targetComboBox.getItemCount() > 0) {
-                targetComboBox.setSelectedIndex(0);
+            List<String> features = selectedFeatures();
+
+            String jobKey = "Run All|" + String.join("|", features);
+            if (isAlreadyRunning(jobKey, "Run All")) {
+                return;
             }
+
+            RunAllWorker worker = new RunAllWorker(jobKey, features, Arrays.asList(classifiers));
+            runningJobs.put(jobKey, worker);
+            cancelButton.setEnabled(true);
+            resultArea.setText("Running all classifiers on " + String.join(", ", features) + "...\n");
+            worker.execute();
         }
     }
 
-    private class ClassifierButtonListener implements ActionListener {
-        private String classifierName;
+    /**
+     * Runs an ensemble of the six classifiers together with the six on their own, so
+     * its CV metrics and ROC curve are shown next to theirs.
+     */
+    private class EnsembleButtonListener implements ActionListener {
 
-        public ClassifierButtonListener(String name) {
-            this.classifierName = name;
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (!isSelectionValid()) {
+                return;
+            }
+
+            String[] ensembles = {PredictionPipeline.SOFT_VOTE_NAME, PredictionPipeline.STACKING_NAME};
+            String ensembleName = (String) JOptionPane.showInputDialog(BirdMigratoryStatusPredictor.this,
+                    "Combine the six classifiers by:",
+                    "Ensemble", JOptionPane.QUESTION_MESSAGE, null, ensembles, ensembles[0]);
+            if (ensembleName == null) {
+                return;
+            }
+
+            List<String> features = selectedFeatures();
+            String jobKey = ensembleName + "|" + String.join("|", features);
+            if (isAlreadyRunning(jobKey, ensembleName)) {
+                return;
+            }
+
+            List<String> names = new ArrayList<>(Arrays.asList(classifiers));
+            names.add(ensembleName);
+            RunAllWorker worker = new RunAllWorker(jobKey, features, names);
+            runningJobs.put(jobKey, worker);
+            cancelButton.setEnabled(true);
+            resultArea.setText("Running " + ensembleName + " and its members on " + String.join(", ", features)
+                    + "...\n");
+            worker.execute();
         }
+    }
+
+    private class SearchPairsButtonListener implements ActionListener {
 
         @Override
         public void actionPerformed(ActionEvent e) {
-            if (dataset == null) {
+            if (columnStore == null) {
                 JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
                         "Please load a dataset first.",
                         "Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
 
-            String feature1 = (String) feature1ComboBox.getSelectedItem();
-            String feature2 = (String) feature2ComboBox.getSelectedItem();
-
-            if (feature1 == null) {
+            if (numericFeatures.size() < 2) {
                 JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
-                        "Please select at least one feature.",
+                        "At least two numeric features are needed to search feature pairs.",
                         "Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
 
-            if (feature2 != null && feature1.equals(feature2)) {
+            String classifierName = (String) JOptionPane.showInputDialog(BirdMigratoryStatusPredictor.this,
+                    "Classifier to score every feature pair with:",
+                    "Feature Pair Search", JOptionPane.QUESTION_MESSAGE, null, classifiers, classifiers[0]);
+            if (classifierName == null) {
+                return;
+            }
+
+            String jobKey = "Pair Search|" + classifierName;
+            if (isAlreadyRunning(jobKey, "Pair search with " + classifierName)) {
+                return;
+            }
+
+            FeaturePairSearchWorker worker = new FeaturePairSearchWorker(jobKey, classifierName,
+                    new ArrayList<>(numericFeatures));
+            runningJobs.put(jobKey, worker);
+            cancelButton.setEnabled(true);
+            resultArea.setText("Searching feature pairs with " + classifierName + "...\n");
+            worker.execute();
+        }
+    }
+
+    private class SelectFeaturesButtonListener implements ActionListener {
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (columnStore == null) {
                 JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
-                        "Please select two distinct features.",
+                        "Please load a dataset first.",
                         "Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
 
-            try {
+            JComboBox<String> classifierComboBox = new JComboBox<>(classifiers);
+            JComboBox<FeatureSelector.Direction> directionComboBox = new JComboBox<>(FeatureSelector.Direction.values());
+            JPanel panel = new JPanel(new GridLayout(0, 2, 5, 5));
+            panel.add(new JLabel("Classifier:"));
+            panel.add(classifierComboBox);
+            panel.add(new JLabel("Search:"));
+            panel.add(directionComboBox);
+            int choice = JOptionPane.showConfirmDialog(BirdMigratoryStatusPredictor.this, panel,
+                    "Wrapper Feature Selection", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+            if (choice != JOptionPane.OK_OPTION) {
+                return;
+            }
+
+            String classifierName = (String) classifierComboBox.getSelectedItem();
+            FeatureSelector.Direction direction = (FeatureSelector.Direction) directionComboBox.getSelectedItem();
+            String jobKey = "Feature Selection|" + classifierName;
+            if (isAlreadyRunning(jobKey, "Feature selection with " + classifierName)) {
+                return;
+            }
+
+            FeatureSelectionWorker worker = new FeatureSelectionWorker(jobKey, classifierName, direction);
+            runningJobs.put(jobKey, worker);
+            cancelButton.setEnabled(true);
+            resultArea.setText("Selecting features for " + classifierName + " ("
+                    + direction.name().toLowerCase(Locale.ROOT) + " search)...\n");
+            worker.execute();
+        }
+    }
+
+    private class ConfidenceIntervalsButtonListener implements ActionListener {
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (!isSelectionValid()) {
+                return;
+            }
+
+            List<String> names = new ArrayList<>(Arrays.asList(classifiers));
+            names.add(PredictionPipeline.SOFT_VOTE_NAME);
+            names.add(PredictionPipeline.STACKING_NAME);
+            JComboBox<String> classifierComboBox = new JComboBox<>(names.toArray(new String[0]));
+            JComboBox<ConfidenceIntervals.Method> methodComboBox = new JComboBox<>(ConfidenceIntervals.Method.values());
+            JSpinner repetitionsSpinner = new JSpinner(new SpinnerNumberModel(200, 2, 100000, 50));
+            JPanel panel = new JPanel(new GridLayout(0, 2, 5, 5));
+            panel.add(new JLabel("Classifier:"));
+            panel.add(classifierComboBox);
+            panel.add(new JLabel("Resampling:"));
+            panel.add(methodComboBox);
+            panel.add(new JLabel("Repetitions:"));
+            panel.add(repetitionsSpinner);
+            int choice = JOptionPane.showConfirmDialog(BirdMigratoryStatusPredictor.this, panel,
+                    "Confidence Intervals", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+            if (choice != JOptionPane.OK_OPTION) {
+                return;
+            }
+
+            String classifierName = (String) classifierComboBox.getSelectedItem();
+            List<String> features = selectedFeatures();
+            String jobKey = "Confidence Intervals|" + classifierName + "|" + String.join("|", features);
+            if (isAlreadyRunning(jobKey, "Confidence intervals for " + classifierName)) {
+                return;
+            }
+
+            ConfidenceIntervalsWorker worker = new ConfidenceIntervalsWorker(jobKey, classifierName, features,
+                    (ConfidenceIntervals.Method) methodComboBox.getSelectedItem(), (Integer) repetitionsSpinner.getValue());
+            runningJobs.put(jobKey, worker);
+            cancelButton.setEnabled(true);
+            resultArea.setText("Estimating confidence intervals for " + classifierName + " on "
+                    + String.join(", ", features) + "...\n");
+            worker.execute();
+        }
+    }
 
-                ArrayList<Attribute> attributes = new ArrayList<>();
-                Attribute attr1 = dataset.attribute(feature1);
-                attributes.add(attr1);
+    private class KnnSettingsButtonListener implements ActionListener {
 
-                Attribute attr2 = null;
-                if (feature2 != null) {
-                    attr2 = dataset.attribute(feature2);
-                    attributes.add(attr2);
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            KnnSettings current = pipeline.getKnnSettings();
+            JSpinner kSpinner = new JSpinner(new SpinnerNumberModel(current.k, 1, 1000, 1));
+            JComboBox<KdTreeKnn.Distance> distanceComboBox = new JComboBox<>(KdTreeKnn.Distance.values());
+            distanceComboBox.setSelectedItem(current.distance);
+            JComboBox<KnnSettings.Search> searchComboBox = new JComboBox<>(KnnSettings.Search.values());
+            searchComboBox.setSelectedItem(current.search);
+            JCheckBox normalizeCheckBox = new JCheckBox("Normalize features", current.normalize);
+
+            JPanel panel = new JPanel(new GridLayout(0, 2, 5, 5));
+            panel.add(new JLabel("Neighbours (k):"));
+            panel.add(kSpinner);
+            panel.add(new JLabel("Distance:"));
+            panel.add(distanceComboBox);
+            panel.add(new JLabel("Search:"));
+            panel.add(searchComboBox);
+            panel.add(normalizeCheckBox);
+
+            int choice = JOptionPane.showConfirmDialog(BirdMigratoryStatusPredictor.this, panel, "k-NN Settings",
+                    JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+            if (choice == JOptionPane.OK_OPTION) {
+                pipeline.setKnnSettings(new KnnSettings((Integer) kSpinner.getValue(),
+                        (KdTreeKnn.Distance) distanceComboBox.getSelectedItem(), normalizeCheckBox.isSelected(),
+                        (KnnSettings.Search) searchComboBox.getSelectedItem()));
+                resultArea.append("k-NN settings: " + pipeline.getKnnSettings() + "\n");
+            }
+        }
+    }
+
+    private class TuneButtonListener implements ActionListener {
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (!isSelectionValid()) {
+                return;
+            }
+
+            JPanel classifierPanel = new JPanel(new GridLayout(0, 1));
+            List<JCheckBox> classifierCheckBoxes = new ArrayList<>();
+            for (String clfName : classifiers) {
+                JCheckBox checkBox = new JCheckBox(clfName, true);
+                classifierCheckBoxes.add(checkBox);
+                classifierPanel.add(checkBox);
+            }
+            JComboBox<HyperparameterSearch.Mode> modeComboBox = new JComboBox<>(HyperparameterSearch.Mode.values());
+            JSpinner trialsSpinner = new JSpinner(new SpinnerNumberModel(10, 1, 1000, 1));
+
+            JPanel optionsPanel = new JPanel(new GridLayout(0, 2, 5, 5));
+            optionsPanel.add(new JLabel("Search:"));
+            optionsPanel.add(modeComboBox);
+            optionsPanel.add(new JLabel("Random trials per classifier:"));
+            optionsPanel.add(trialsSpinner);
+            JPanel panel = new JPanel(new BorderLayout(5, 5));
+            panel.add(classifierPanel, BorderLayout.CENTER);
+            panel.add(optionsPanel, BorderLayout.SOUTH);
+
+            int choice = JOptionPane.showConfirmDialog(BirdMigratoryStatusPredictor.this, panel,
+                    "Hyperparameter Search", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+            if (choice != JOptionPane.OK_OPTION) {
+                return;
+            }
+
+            List<String> classifierNames = new ArrayList<>();
+            for (JCheckBox checkBox : classifierCheckBoxes) {
+                if (checkBox.isSelected()) {
+                    classifierNames.add(checkBox.getText());
                 }
+            }
+            if (classifierNames.isEmpty()) {
+                return;
+            }
 
-                Attribute classAttr = dataset.classAttribute();
-                attributes.add(classAttr);
+            String jobKey = "Tuning";
+            if (isAlreadyRunning(jobKey, "Hyperparameter search")) {
+                return;
+            }
 
-                Instances newData = new Instances("SelectedFeatures", attributes, dataset.numInstances());
-                newData.setClassIndex(newData.numAttributes() - 1);
+            List<String> features = selectedFeatures();
+            TuningWorker worker = new TuningWorker(jobKey, classifierNames, features,
+                    (HyperparameterSearch.Mode) modeComboBox.getSelectedItem(), (Integer) trialsSpinner.getValue());
+            runningJobs.put(jobKey, worker);
+            cancelButton.setEnabled(true);
+            resultArea.setText("Tuning " + String.join(", ", classifierNames) + " on "
+                    + String.join(", ", features) + "...\n");
+            worker.execute();
+        }
+    }
 
-                for (int i = 0; i < dataset.numInstances(); i++) {
-                    DenseInstance instance = new DenseInstance(newData.numAttributes());
-                    instance.setDataset(newData);
-                    instance.setValue(0, dataset.instance(i).value(attr1));
+    private class CancelButtonListener implements ActionListener {
 
-                    if (attr2 != null) {
-                        instance.setValue(1, dataset.instance(i).value(attr2));
-                        instance.setClassValue(dataset.instance(i).classValue());
-                    } else {
-                        instance.setClassValue(dataset.instance(i).classValue());
-                    }
-                    newData.add(instance);
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            for (SwingWorker<?, ?> worker : new ArrayList<>(runningJobs.values())) {
+                worker.cancel(true);
+            }
+        }
+    }
+
+    private boolean isSelectionValid() {
+        if (columnStore == null) {
+            JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
+                    "Please load a dataset first.",
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+
+        if (selectedFeatures().isEmpty()) {
+            JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
+                    "Please select at least one feature.",
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isAlreadyRunning(String jobKey, String jobName) {
+        if (runningJobs.containsKey(jobKey)) {
+            JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
+                    jobName + " is already running on the selected features.",
+                    "Information", JOptionPane.INFORMATION_MESSAGE);
+            return true;
+        }
+        return false;
+    }
+
+    private class TrainingWorker extends SwingWorker<TrainingWorker.Result, String> {
+        private String jobKey;
+        private String classifierName;
+        private List<String> features;
+        private ColumnStore store = columnStore;
+        private ClassBalancer.Mode mode = balanceMode;
+
+        private class Result {
+            Classifier model;
+            Evaluation eval;
+            double[][] rocPoints;
+        }
+
+        public TrainingWorker(String jobKey, String classifierName, List<String> features) {
+            this.jobKey = jobKey;
+            this.classifierName = classifierName;
+            this.features = features;
+        }
+
+        @Override
+        protected Result doInBackground() throws Exception {
+            String cacheKey = ModelCache.key(store, features, pipeline.configuredName(classifierName),
+                    PredictionPipeline.CV_FOLDS, PredictionPipeline.CV_SEED, mode);
+            ModelCache.Entry trained = modelCache.get(cacheKey);
+            if (trained != null) {
+                publish(classifierName + ": loaded from the model cache");
+            } else {
+                Instances balancedData = pipeline.projectFeatures(store, features, pipeline.balanceClasses(store, mode));
+
+                trained = pipeline.trainAndEvaluate(classifierName, balancedData,
+                        (completed, numFolds, foldEval) -> {
+                            publish(String.format("%s: %d/%d folds done, last fold accuracy %.2f%%",
+                                    classifierName, completed, numFolds, foldEval.pctCorrect()));
+                            if (completed == numFolds && !isCancelled()) {
+                                publish(classifierName + ": building final model");
+                            }
+                            return !isCancelled();
+                        });
+                if (trained == null || isCancelled()) {
+                    return null;
                 }
+                modelCache.put(cacheKey, trained);
+            }
 
-                int countResident = 0;
-                int countMigratory = 0;
-                for (int i = 0; i < newData.numInstances(); i++) {
-                    double classValue = newData.instance(i).classValue();
-                    String classLabel = newData.classAttribute().value((int) classValue);
-                    if ("Resident".equalsIgnoreCase(classLabel)) {
-                        countResident++;
-                    } else if ("Migratory".equalsIgnoreCase(classLabel)) {
-                        countMigratory++;
-                    }
+            Result result = new Result();
+            result.model = trained.model;
+            result.eval = trained.eval;
+            result.rocPoints = trained.rocPoints;
+            return result;
+        }
+
+        @Override
+        protected void process(List<String> chunks) {
+            for (String line : chunks) {
+                resultArea.append(line + "\n");
+            }
+        }
+
+        @Override
+        protected void done() {
+            runningJobs.remove(jobKey);
+            cancelButton.setEnabled(!runningJobs.isEmpty());
+
+            if (isCancelled()) {
+                resultArea.append(classifierName + ": cancelled.\n");
+                return;
+            }
+
+            try {
+                Result result = get();
+                if (result == null) {
+                    resultArea.append(classifierName + ": cancelled.\n");
+                    return;
                 }
-                System.out.println("Before Resampling:");
-                System.out.println("Resident: " + countResident);
-                System.out.println("Migratory: " + countMigratory);
-
-                Resample resample = new Resample();
-                resample.setNoReplacement(false); 
-                resample.setBiasToUniformClass(1.0); 
-                resample.setInputFormat(newData);
-                Instances balancedData = Filter.useFilter(newData, resample);
-
-                int balancedResident = 0;
-                int balancedMigratory = 0;
-                for (int i = 0; i < balancedData.numInstances(); i++) {
-                    double classValue = balancedData.instance(i).classValue();
-                    String classLabel = balancedData.classAttribute().value((int) classValue);
-                    if ("Resident".equalsIgnoreCase(classLabel)) {
-                        balancedResident++;
-                    } else if ("Migratory".equalsIgnoreCase(classLabel)) {
-                        balancedMigratory++;
-                    }
+
+                StringBuilder sb = new StringBuilder();
+                sb.append("=== Evaluation Results ===\n");
+                sb.append("Classifier: ").append(classifierName).append("\n");
+                sb.append("Features: ").append(String.join(", ", features)).append("\n\n");
+                sb.append(result.eval.toSummaryString("\nResults\n======\n", false));
+                sb.append(result.eval.toClassDetailsString());
+                sb.append(result.eval.toMatrixString());
+
+                sb.append("\n").append(modelCache.statistics()).append("\n");
+
+                resultArea.setText(sb.toString());
+
+                showROCCurve(result.rocPoints);
+
+                if (store == columnStore) {
+                    // The cached model stays untouched; updates go to a copy made on first use.
+                    liveClassifierName = classifierName;
+                    liveFeatures = features;
+                    liveModel = result.model;
+                    liveModelIsCopy = false;
+                    liveGeneration++;
                 }
-                System.out.println("After Resampling:");
-                System.out.println("Resident: " + balancedResident);
-                System.out.println("Migratory: " + balancedMigratory);
 
-                if (balancedResident == 0 || balancedMigratory == 0) {
-                    JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
-                            "Resampling resulted in only one class. Please check your dataset.",
-                            "Error", JOptionPane.ERROR_MESSAGE);
+            } catch (Exception ex) {
+                Throwable cause = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+                cause.printStackTrace();
+                JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
+                        "Error during training: " + cause.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    private class AppendRowsButtonListener implements ActionListener {
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (datasetTail == null) {
+                JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
+                        "Please load a dataset first.",
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
+            JFileChooser fileChooser = new JFileChooser();
+            fileChooser.setFileFilter(new FileNameExtensionFilter("CSV Files", "csv"));
+            if (fileChooser.showOpenDialog(BirdMigratoryStatusPredictor.this) == JFileChooser.APPROVE_OPTION) {
+                pollDataset(fileChooser.getSelectedFile());
+            }
+        }
+    }
+
+    /**
+     * Reads rows appended to the dataset file, or the rows of batch if it is not null.
+     */
+    private void pollDataset(File batch) {
+        if (datasetTail == null || tailWorker != null) {
+            return;
+        }
+        tailWorker = new TailWorker(batch);
+        tailWorker.execute();
+    }
+
+    private void retrainLiveModel() {
+        if (liveClassifierName == null || columnStore == null) {
+            return;
+        }
+        String jobKey = liveClassifierName + "|" + String.join("|", liveFeatures);
+        if (runningJobs.containsKey(jobKey)) {
+            retrainTimer.restart();
+            return;
+        }
+
+        TrainingWorker worker = new TrainingWorker(jobKey, liveClassifierName, liveFeatures);
+        runningJobs.put(jobKey, worker);
+        cancelButton.setEnabled(true);
+        resultArea.append("Retraining " + liveClassifierName + " with the appended rows...\n");
+        worker.execute();
+    }
+
+    /**
+     * Extends the loaded dataset with appended rows. If the last trained classifier can
+     * learn incrementally, it is updated with just those rows and scored on them;
+     * otherwise a full retrain is scheduled once rows stop arriving.
+     */
+    private class TailWorker extends SwingWorker<TailWorker.Result, Void> {
+        private File batch;
+        private DatasetTail tail = datasetTail;
+        private String classifierName = liveClassifierName;
+        private List<String> features = liveFeatures;
+        private Classifier model = liveModel;
+        private boolean ownsModel = liveModelIsCopy;
+        private int generation = liveGeneration;
+
+        private class Result {
+            ColumnStore store;
+            int newRows;
+            ModelCache.Entry update;
+            long updateMillis;
+        }
+
+        public TailWorker(File batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        protected Result doInBackground() throws Exception {
+            ColumnStore newRows = batch != null ? tail.append(batch) : tail.poll();
+            if (newRows == null) {
+                return null;
+            }
+
+            Result result = new Result();
+            result.store = tail.store();
+            result.newRows = newRows.numRows();
+            if (model instanceof UpdateableClassifier) {
+                long start = System.nanoTime();
+                if (!ownsModel) {
+                    model = AbstractClassifier.makeCopy(model);
+                }
+                Instances rows = pipeline.projectFeatures(newRows, features, null);
+                result.update = pipeline.updateIncrementally(model, rows);
+                result.updateMillis = (System.nanoTime() - start) / 1_000_000;
+            }
+            return result;
+        }
+
+        @Override
+        protected void done() {
+            tailWorker = null;
+            try {
+                Result result = get();
+                if (result == null || tail != datasetTail) {
                     return;
                 }
 
-                Classifier classifier = getClassifierByName(classifierName);
+                columnStore = result.store;
+                resultArea.append(String.format("%d new rows appended (%d in total).%n",
+                        result.newRows, columnStore.numRows()));
+
+                if (result.update != null && generation == liveGeneration) {
+                    liveModel = result.update.model;
+                    liveModelIsCopy = true;
+                    resultArea.append(String.format("%s updated incrementally in %d ms. On the new rows: "
+                                    + "accuracy %.2f%%, AUC %.4f%n", classifierName, result.updateMillis,
+                            result.update.eval.pctCorrect(), result.update.auc));
+                    showROCCurve(result.update.rocPoints);
+                } else if (classifierName != null && generation == liveGeneration) {
+                    resultArea.append(String.format("%s cannot learn incrementally; retraining in the background "
+                            + "once no rows arrive for %d s.%n", classifierName, retrainTimer.getDelay() / 1000));
+                    retrainTimer.restart();
+                }
 
-                if (classifier == null) {
-                    JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
-                            "Unsupported classifier selected.",
-                            "Error", JOptionPane.ERROR_MESSAGE);
-                    return;
+            } catch (Exception ex) {
+                Throwable cause = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+                cause.printStackTrace();
+                followFileCheckBox.setSelected(false);
+                tailTimer.stop();
+                JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
+                        "Error reading new rows: " + cause.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    private class RunAllWorker extends SwingWorker<List<RunAllWorker.Entry>, String> {
+        private String jobKey;
+        private List<String> features;
+        private List<String> names;
+        private ColumnStore store = columnStore;
+        private ClassBalancer.Mode mode = balanceMode;
+        private Instances balancedData;
+
+        private class Entry {
+            String classifierName;
+            Evaluation eval;
+            double auc;
+            long wallTimeMillis;
+            double[][] rocPoints;
+        }
+
+        public RunAllWorker(String jobKey, List<String> features, List<String> names) {
+            this.jobKey = jobKey;
+            this.features = features;
+            this.names = names;
+        }
+
+        @Override
+        protected List<Entry> doInBackground() throws Exception {
+            ExecutorService executor = Executors.newFixedThreadPool(names.size());
+            try {
+                List<Future<Entry>> futures = new ArrayList<>();
+                for (String name : names) {
+                    futures.add(executor.submit(() -> evaluateClassifier(name)));
+                }
+
+                List<Entry> entries = new ArrayList<>();
+                for (Future<Entry> future : futures) {
+                    Entry entry = future.get();
+                    if (entry == null) {
+                        return null;
+                    }
+                    entries.add(entry);
                 }
+                entries.sort((e1, e2) -> Double.compare(e2.eval.pctCorrect(), e1.eval.pctCorrect()));
+                return entries;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
 
-                Evaluation eval = new Evaluation(balancedData);
-                eval.crossValidateModel(classifier, balancedData, 10, new Random(1));
+        // Projected and balanced at most once, then shared read-only by every classifier
+        // that is not already in the model cache.
+        private synchronized Instances balancedData() throws Exception {
+            if (balancedData == null) {
+                balancedData = pipeline.projectFeatures(store, features, pipeline.balanceClasses(store, mode));
+            }
+            return balancedData;
+        }
 
-                classifier.buildClassifier(balancedData);
+        private Entry evaluateClassifier(String name) throws Exception {
+            long start = System.nanoTime();
+            String cacheKey = ModelCache.key(store, features, pipeline.configuredName(name),
+                    PredictionPipeline.CV_FOLDS, PredictionPipeline.CV_SEED, mode);
+            ModelCache.Entry trained = modelCache.get(cacheKey);
+            if (trained == null) {
+                trained = pipeline.trainAndEvaluate(name, balancedData(), (completed, numFolds, foldEval) -> !isCancelled());
+                if (trained == null || isCancelled()) {
+                    return null;
+                }
+                modelCache.put(cacheKey, trained);
+            }
+
+            Entry entry = new Entry();
+            entry.classifierName = name;
+            entry.eval = trained.eval;
+            entry.rocPoints = trained.rocPoints;
+            entry.auc = trained.auc;
+            entry.wallTimeMillis = (System.nanoTime() - start) / 1_000_000;
+
+            publish(String.format("%s: done in %d ms", name, entry.wallTimeMillis));
+            return entry;
+        }
+
+        @Override
+        protected void process(List<String> chunks) {
+            for (String line : chunks) {
+                resultArea.append(line + "\n");
+            }
+        }
+
+        @Override
+        protected void done() {
+            runningJobs.remove(jobKey);
+            cancelButton.setEnabled(!runningJobs.isEmpty());
+
+            if (isCancelled()) {
+                resultArea.append("Run All: cancelled.\n");
+                return;
+            }
+
+            try {
+                List<Entry> entries = get();
+                if (entries == null) {
+                    resultArea.append("Run All: cancelled.\n");
+                    return;
+                }
 
                 StringBuilder sb = new StringBuilder();
-                sb.append("=== Evaluation Results ===\n");
-                sb.append("Classifier: ").append(classifierName).append("\n\n");
-                sb.append(eval.toSummaryString("\nResults\n======\n", false));
-                sb.append(eval.toClassDetailsString());
-                sb.append(eval.toMatrixString());
+                sb.append("=== Classifier Leaderboard ===\n");
+                sb.append("Features: ").append(String.join(", ", features)).append("\n\n");
+                sb.append(String.format("%-4s %-22s %10s %8s %12s%n", "Rank", "Classifier", "Accuracy", "AUC", "Wall time"));
+
+                Map<String, double[][]> curves = new LinkedHashMap<>();
+                int rank = 1;
+                for (Entry entry : entries) {
+                    sb.append(String.format("%-4d %-22s %9.2f%% %8.4f %9d ms%n", rank++, entry.classifierName,
+                            entry.eval.pctCorrect(), entry.auc, entry.wallTimeMillis));
+                    curves.put(entry.classifierName, entry.rocPoints);
+                }
+
+                sb.append("\n").append(modelCache.statistics()).append("\n");
 
                 resultArea.setText(sb.toString());
 
-                generateROCCurve(classifier, balancedData, eval);
+                showROCCurves(curves);
 
             } catch (Exception ex) {
-                ex.printStackTrace();
+                Throwable cause = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+                if (cause instanceof ExecutionException && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                cause.printStackTrace();
                 JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
-                        "Error during training: " + ex.getMessage(),
+                        "Error during training: " + cause.getMessage(),
                         "Error", JOptionPane.ERROR_MESSAGE);
             }
         }
     }
 
-    private Classifier getClassifierByName(String name) throws Exception {
-        switch (name) {
-            case "Random Forest":
-                return new RandomForest();
-            case "J48 (Decision Tree)":
-                return new J48();
-            case "Logistic Regression":
-                return new Logistic();
-            case "SMO (SVM)":
-                return new SMO();
-            case "Naive Bayes":
-                return new NaiveBayes();
-            case "IBk (k-NN)":
-                return new IBk();
-            default:
+    private class FeaturePairSearchWorker extends SwingWorker<List<FeaturePairSearchWorker.PairResult>, String> {
+        private static final int TOP_K = 5;
+        private static final int PRUNE_AFTER_FOLDS = 3;
+        private static final double PRUNE_MARGIN = 5.0;
+
+        private String jobKey;
+        private String classifierName;
+        private List<String> features;
+        private ColumnStore store = columnStore;
+        private ClassBalancer.Mode mode = balanceMode;
+
+        // Final accuracies of finished pairs, best first, capped at TOP_K.
+        private List<Double> topAccuracies = new ArrayList<>();
+
+        private class PairResult {
+            String feature1;
+            String feature2;
+            double accuracy;
+            double auc = Double.NaN;
+            int foldsRun;
+            boolean pruned;
+        }
+
+        public FeaturePairSearchWorker(String jobKey, String classifierName, List<String> features) {
+            this.jobKey = jobKey;
+            this.classifierName = classifierName;
+            this.features = features;
+        }
+
+        @Override
+        protected List<PairResult> doInBackground() throws Exception {
+            // Balancing only looks at the class column, so one sample serves every pair.
+            // Each pair is then a view over those rows of the column store.
+            ClassBalancer.Sample shared = pipeline.balanceClasses(store, mode);
+            int posIndex = store.classAttribute().indexOfValue("Migratory");
+            CrossValidationEngine engine = new CrossValidationEngine(1);
+            engine.setMetrics(pipeline.metrics());
+
+            int threads = Integer.getInteger("bird.search.parallelism", Runtime.getRuntime().availableProcessors());
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+            try {
+                CompletionService<PairResult> completion = new ExecutorCompletionService<>(executor);
+                int numPairs = 0;
+                for (int i = 0; i < features.size(); i++) {
+                    for (int j = i + 1; j < features.size(); j++) {
+                        String feature1 = features.get(i);
+                        String feature2 = features.get(j);
+                        completion.submit(() -> evaluatePair(engine, shared, posIndex, feature1, feature2));
+                        numPairs++;
+                    }
+                }
+
+                List<PairResult> results = new ArrayList<>();
+                int pruned = 0;
+                for (int done = 1; done <= numPairs; done++) {
+                    PairResult result = completion.take().get();
+                    if (result == null) {
+                        return null;
+                    }
+                    results.add(result);
+                    if (result.pruned) {
+                        pruned++;
+                    }
+                    publish(String.format("%d/%d pairs scored, %d pruned", done, numPairs, pruned));
+                }
+
+                results.sort((r1, r2) -> r1.pruned != r2.pruned
+                        ? Boolean.compare(r1.pruned, r2.pruned)
+                        : Double.compare(r2.accuracy, r1.accuracy));
+                return results;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        private PairResult evaluatePair(CrossValidationEngine engine, ClassBalancer.Sample shared, int posIndex,
+                                        String feature1, String feature2) throws Exception {
+            Instances pairData = pipeline.projectFeatures(store, Arrays.asList(feature1, feature2), shared);
+            Classifier classifier = pipeline.newClassifier(classifierName);
+
+            PairResult result = new PairResult();
+            result.feature1 = feature1;
+            result.feature2 = feature2;
+
+            double[] correctAndTotal = new double[2];
+            Evaluation eval = engine.crossValidate(classifier, pairData,
+                    PredictionPipeline.CV_FOLDS, new Random(PredictionPipeline.CV_SEED),
+                    (completed, numFolds, foldEval) -> {
+                        correctAndTotal[0] += foldEval.correct();
+                        correctAndTotal[1] += foldEval.numInstances();
+                        result.foldsRun = completed;
+                        if (isCancelled()) {
+                            return false;
+                        }
+                        if (completed >= PRUNE_AFTER_FOLDS && completed < numFolds) {
+                            double runningAccuracy = 100.0 * correctAndTotal[0] / correctAndTotal[1];
+                            if (runningAccuracy < pruneThreshold()) {
+                                result.pruned = true;
+                                result.accuracy = runningAccuracy;
+                                return false;
+                            }
+                        }
+                        return true;
+                    });
+
+            if (isCancelled()) {
                 return null;
+            }
+            if (eval != null) {
+                result.accuracy = eval.pctCorrect();
+                result.auc = RocCurve.fromPredictions(eval.predictions(), posIndex).auc();
+                recordAccuracy(result.accuracy);
+            }
+            return result;
         }
-    }
 
-    private void generateROCCurve(Classifier classifier, Instances data, Evaluation eval) {
-        try {
+        private synchronized double pruneThreshold() {
+            if (topAccuracies.size() < TOP_K) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            return topAccuracies.get(TOP_K - 1) - PRUNE_MARGIN;
+        }
 
-            if (!data.classAttribute().isNominal() || data.classAttribute().numValues() != 2) {
-                JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
-                        "ROC Curve can only be generated for binary classification.",
-                        "Information", JOptionPane.INFORMATION_MESSAGE);
+        private synchronized void recordAccuracy(double accuracy) {
+            topAccuracies.add(accuracy);
+            topAccuracies.sort(Collections.reverseOrder());
+            if (topAccuracies.size() > TOP_K) {
+                topAccuracies.remove(TOP_K);
+            }
+        }
+
+        @Override
+        protected void process(List<String> chunks) {
+            resultArea.append(chunks.get(chunks.size() - 1) + "\n");
+        }
+
+        @Override
+        protected void done() {
+            runningJobs.remove(jobKey);
+            cancelButton.setEnabled(!runningJobs.isEmpty());
+
+            if (isCancelled()) {
+                resultArea.append("Pair search: cancelled.\n");
                 return;
             }
 
-            String positiveClassLabel = "Migratory";
-            String negativeClassLabel = "Resident";
+            try {
+                List<PairResult> results = get();
+                if (results == null) {
+                    resultArea.append("Pair search: cancelled.\n");
+                    return;
+                }
 
-            int posIndex = data.classAttribute().indexOfValue(positiveClassLabel);
-            int negIndex = data.classAttribute().indexOfValue(negativeClassLabel);
+                PairResult best = results.get(0);
+                resultArea.append(String.format("Best pair for %s: %s, %s (%.2f%%)%n",
+                        classifierName, best.feature1, best.feature2, best.accuracy));
 
-            if (posIndex == -1 || negIndex == -1) {
+                showPairSearchResults(classifierName, results);
+
+            } catch (Exception ex) {
+                Throwable cause = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+                if (cause instanceof ExecutionException && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                cause.printStackTrace();
                 JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
-                        "Class labels 'Migratory' and/or 'Resident' not found.",
+                        "Error during feature pair search: " + cause.getMessage(),
                         "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+
+        private void showPairSearchResults(String classifierName, List<PairResult> results) {
+            String[] columns = {"Rank", "Feature 1", "Feature 2", "Accuracy (%)", "AUC", "Folds", "Status"};
+            DefaultTableModel model = new DefaultTableModel(columns, 0) {
+                @Override
+                public boolean isCellEditable(int row, int column) {
+                    return false;
+                }
+            };
+            int rank = 1;
+            for (PairResult result : results) {
+                model.addRow(new Object[]{
+                        result.pruned ? "-" : String.valueOf(rank++),
+                        result.feature1,
+                        result.feature2,
+                        String.format("%.2f", result.accuracy),
+                        Double.isNaN(result.auc) ? "-" : String.format("%.4f", result.auc),
+                        result.foldsRun,
+                        result.pruned ? "Pruned" : "Complete"
+                });
+            }
+
+            JDialog dialog = new JDialog(BirdMigratoryStatusPredictor.this,
+                    "Feature Pair Ranking - " + classifierName, false);
+            dialog.add(new JScrollPane(new JTable(model)), BorderLayout.CENTER);
+            dialog.setSize(700, 400);
+            dialog.setLocationRelativeTo(BirdMigratoryStatusPredictor.this);
+            dialog.setVisible(true);
+        }
+    }
+
+    /**
+     * Runs FeatureSelector over every feature and selects the result in the window.
+     */
+    private class FeatureSelectionWorker extends SwingWorker<List<FeatureSelector.Step>, FeatureSelector.Step> {
+        private String jobKey;
+        private String classifierName;
+        private FeatureSelector.Direction direction;
+        private ColumnStore store = columnStore;
+        private ClassBalancer.Mode mode = balanceMode;
+
+        public FeatureSelectionWorker(String jobKey, String classifierName, FeatureSelector.Direction direction) {
+            this.jobKey = jobKey;
+            this.classifierName = classifierName;
+            this.direction = direction;
+        }
+
+        @Override
+        protected List<FeatureSelector.Step> doInBackground() throws Exception {
+            int threads = Integer.getInteger("bird.search.parallelism", Runtime.getRuntime().availableProcessors());
+            FeatureSelector selector = new FeatureSelector(pipeline, threads);
+            return selector.select(store, pipeline.balanceClasses(store, mode), store.featureNames(), classifierName,
+                    direction, new FeatureSelector.Listener() {
+                        @Override
+                        public void stepCompleted(FeatureSelector.Step step) {
+                            publish(step);
+                        }
+
+                        @Override
+                        public boolean isCancelled() {
+                            return FeatureSelectionWorker.this.isCancelled();
+                        }
+                    });
+        }
+
+        @Override
+        protected void process(List<FeatureSelector.Step> steps) {
+            for (FeatureSelector.Step step : steps) {
+                resultArea.append(describe(step) + "\n");
+            }
+        }
+
+        private String describe(FeatureSelector.Step step) {
+            String change = step.change == null ? "All features" : (step.added ? "+ " : "- ") + step.change;
+            return String.format("%-28s accuracy %.2f%%, AUC %.4f (%d candidates, %d pruned)",
+                    change, step.accuracy, step.auc, step.candidates, step.pruned);
+        }
+
+        @Override
+        protected void done() {
+            runningJobs.remove(jobKey);
+            cancelButton.setEnabled(!runningJobs.isEmpty());
+
+            if (isCancelled()) {
+                resultArea.append("Feature selection: cancelled.\n");
                 return;
             }
 
-            List<Prediction> predictions = new ArrayList<>();
-            for (int i = 0; i < data.numInstances(); i++) {
-                double[] dist = classifier.distributionForInstance(data.instance(i));
-                double prob = dist[posIndex];
-                double actual = data.instance(i).classValue() == posIndex ? 1.0 : 0.0;
-                predictions.add(new Prediction(actual, prob));
+            try {
+                List<FeatureSelector.Step> steps = get();
+                if (steps == null) {
+                    resultArea.append("Feature selection: cancelled.\n");
+                    return;
+                }
+                if (steps.isEmpty()) {
+                    resultArea.append("Feature selection: no feature improved on an empty set.\n");
+                    return;
+                }
+
+                FeatureSelector.Step last = steps.get(steps.size() - 1);
+                resultArea.append(String.format("Selected for %s: %s (%.2f%%)%n",
+                        classifierName, String.join(", ", last.features), last.accuracy));
+                if (store == columnStore) {
+                    setSelectedFeatures(last.features);
+                }
+
+            } catch (Exception ex) {
+                Throwable cause = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+                if (cause instanceof ExecutionException && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                cause.printStackTrace();
+                JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
+                        "Error during feature selection: " + cause.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Runs HyperparameterSearch on the selected features, then saves and applies the
+     * best configuration of each classifier.
+     */
+    private class TuningWorker extends SwingWorker<List<HyperparameterSearch.Trial>, HyperparameterSearch.Trial> {
+        private String jobKey;
+        private List<String> classifierNames;
+        private List<String> features;
+        private HyperparameterSearch.Mode searchMode;
+        private int maxTrials;
+        private ColumnStore store = columnStore;
+        private ClassBalancer.Mode mode = balanceMode;
+
+        public TuningWorker(String jobKey, List<String> classifierNames, List<String> features,
+                            HyperparameterSearch.Mode searchMode, int maxTrials) {
+            this.jobKey = jobKey;
+            this.classifierNames = classifierNames;
+            this.features = features;
+            this.searchMode = searchMode;
+            this.maxTrials = maxTrials;
+        }
+
+        @Override
+        protected List<HyperparameterSearch.Trial> doInBackground() throws Exception {
+            int threads = Integer.getInteger("bird.search.parallelism", Runtime.getRuntime().availableProcessors());
+            HyperparameterSearch search = new HyperparameterSearch(pipeline, threads, PredictionPipeline.CV_SEED);
+            return search.search(store, pipeline.balanceClasses(store, mode), features, classifierNames, searchMode,
+                    maxTrials, new HyperparameterSearch.Listener() {
+                        @Override
+                        public void trialCompleted(HyperparameterSearch.Trial trial) {
+                            publish(trial);
+                        }
+
+                        @Override
+                        public boolean isCancelled() {
+                            return TuningWorker.this.isCancelled();
+                        }
+                    });
+        }
+
+        @Override
+        protected void process(List<HyperparameterSearch.Trial> trials) {
+            for (HyperparameterSearch.Trial trial : trials) {
+                resultArea.append(trial.error != null
+                        ? String.format("Rung %d %s [%s]: %s%n", trial.rung, trial.classifierName,
+                        trial.configuration, trial.error)
+                        : String.format("Rung %d %s [%s]: %.2f%% on %d rows%n", trial.rung, trial.classifierName,
+                        trial.configuration, trial.accuracy, trial.rows));
             }
+        }
 
-            predictions.sort((p1, p2) -> Double.compare(p2.prob, p1.prob));
+        @Override
+        protected void done() {
+            runningJobs.remove(jobKey);
+            cancelButton.setEnabled(!runningJobs.isEmpty());
 
-            int totalPositives = (int) predictions.stream().filter(p -> p.actual == 1.0).count();
-            int totalNegatives = predictions.size() - totalPositives;
+            if (isCancelled()) {
+                resultArea.append("Hyperparameter search: cancelled.\n");
+                return;
+            }
 
-            int truePositives = 0;
-            int falsePositives = 0;
+            try {
+                List<HyperparameterSearch.Trial> trials = get();
+                if (trials == null) {
+                    resultArea.append("Hyperparameter search: cancelled.\n");
+                    return;
+                }
 
-            List<double[]> rocPoints = new ArrayList<>();
-            rocPoints.add(new double[]{0.0, 0.0}); 
+                for (HyperparameterSearch.Trial trial : trials) {
+                    if (trial.best) {
+                        resultArea.append(String.format("Best for %s: [%s] %.2f%%, AUC %.4f%n",
+                                trial.classifierName, trial.configuration, trial.accuracy, trial.auc));
+                    }
+                }
+                File tuningFile = HyperparameterSearch.defaultTuningFile();
+                HyperparameterSearch.saveBest(tuningFile, trials);
+                pipeline.applyTuning(HyperparameterSearch.loadTuning(tuningFile));
+                resultArea.append("Saved to " + tuningFile + "; the classifier buttons now use these settings.\n");
 
-            for (Prediction p : predictions) {
-                if (p.actual == 1.0) {
-                    truePositives++;
-                } else {
-                    falsePositives++;
+                showTuningResults(trials);
+
+            } catch (Exception ex) {
+                Throwable cause = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+                if (cause instanceof ExecutionException && cause.getCause() != null) {
+                    cause = cause.getCause();
                 }
+                cause.printStackTrace();
+                JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
+                        "Error during hyperparameter search: " + cause.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
 
-                double tpr = (double) truePositives / totalPositives; 
-                double fpr = (double) falsePositives / totalNegatives; 
+        private void showTuningResults(List<HyperparameterSearch.Trial> trials) {
+            String[] columns = {"Classifier", "Configuration", "Rung", "Rows", "Folds", "Accuracy (%)", "AUC",
+                    "Time (ms)", "Status"};
+            DefaultTableModel model = new DefaultTableModel(columns, 0) {
+                @Override
+                public boolean isCellEditable(int row, int column) {
+                    return false;
+                }
 
-                rocPoints.add(new double[]{fpr, tpr});
+                @Override
+                public Class<?> getColumnClass(int column) {
+                    switch (column) {
+                        case 2:
+                        case 3:
+                        case 4:
+                            return Integer.class;
+                        case 5:
+                        case 6:
+                            return Double.class;
+                        case 7:
+                            return Long.class;
+                        default:
+                            return String.class;
+                    }
+                }
+            };
+            for (HyperparameterSearch.Trial trial : trials) {
+                model.addRow(new Object[]{
+                        trial.classifierName,
+                        trial.configuration.isEmpty() ? "(defaults)" : trial.configuration,
+                        trial.rung,
+                        trial.rows,
+                        trial.folds,
+                        Double.isNaN(trial.accuracy) ? null : Math.round(trial.accuracy * 100) / 100.0,
+                        Double.isNaN(trial.auc) ? null : Math.round(trial.auc * 10000) / 10000.0,
+                        trial.millis,
+                        trial.error != null ? "Error: " + trial.error
+                                : trial.best ? "Best" : trial.promoted ? "Promoted" : "Dropped"
+                });
             }
 
-            rocPoints.add(new double[]{1.0, 1.0}); 
+            JTable table = new JTable(model);
+            table.setAutoCreateRowSorter(true);
+            JDialog dialog = new JDialog(BirdMigratoryStatusPredictor.this, "Hyperparameter Search", false);
+            dialog.add(new JScrollPane(table), BorderLayout.CENTER);
+            dialog.setSize(900, 450);
+            dialog.setLocationRelativeTo(BirdMigratoryStatusPredictor.this);
+            dialog.setVisible(true);
+        }
+    }
+
+    /**
+     * Runs ConfidenceIntervals for one classifier and shows the intervals and the ROC
+     * band. Per-repetition rows go to a CSV file under
+     * ConfidenceIntervals.defaultOutputDirectory().
+     */
+    private class ConfidenceIntervalsWorker extends SwingWorker<ConfidenceIntervals.Result, String> {
+        private String jobKey;
+        private String classifierName;
+        private List<String> features;
+        private ConfidenceIntervals.Method method;
+        private int repetitions;
+        private ColumnStore store = columnStore;
+        private ClassBalancer.Mode mode = balanceMode;
+        private File outputFile;
+
+        public ConfidenceIntervalsWorker(String jobKey, String classifierName, List<String> features,
+                                         ConfidenceIntervals.Method method, int repetitions) {
+            this.jobKey = jobKey;
+            this.classifierName = classifierName;
+            this.features = features;
+            this.method = method;
+            this.repetitions = repetitions;
+            String name = classifierName + "-" + String.join("_", features) + "-" + System.currentTimeMillis();
+            this.outputFile = new File(ConfidenceIntervals.defaultOutputDirectory(),
+                    name.replaceAll("[^A-Za-z0-9._-]+", "_") + ".csv");
+        }
+
+        @Override
+        protected ConfidenceIntervals.Result doInBackground() throws Exception {
+            int threads = Integer.getInteger("bird.search.parallelism", Runtime.getRuntime().availableProcessors());
+            ConfidenceIntervals intervals = new ConfidenceIntervals(pipeline, threads, 0.95);
+            int step = Math.max(1, repetitions / 20);
+            return intervals.estimate(store, features, mode, classifierName, method, repetitions, outputFile,
+                    new ConfidenceIntervals.Listener() {
+                        @Override
+                        public void repetitionCompleted(int completed, int total) {
+                            if (completed % step == 0 || completed == total) {
+                                publish(String.format("%d/%d repetitions", completed, total));
+                            }
+                        }
 
-            DefaultXYDataset rocDataset = new DefaultXYDataset();
-            double[][] dataArray = new double[2][rocPoints.size()];
-            for (int i = 0; i < rocPoints.size(); i++) {
-                dataArray[0][i] = rocPoints.get(i)[0]; 
-                dataArray[1][i] = rocPoints.get(i)[1]; 
+                        @Override
+                        public boolean isCancelled() {
+                            return ConfidenceIntervalsWorker.this.isCancelled();
+                        }
+                    });
+        }
+
+        @Override
+        protected void process(List<String> chunks) {
+            resultArea.append(chunks.get(chunks.size() - 1) + "\n");
+        }
+
+        @Override
+        protected void done() {
+            runningJobs.remove(jobKey);
+            cancelButton.setEnabled(!runningJobs.isEmpty());
+
+            if (isCancelled()) {
+                resultArea.append("Confidence intervals: cancelled.\n");
+                return;
             }
-            rocDataset.addSeries("ROC Curve", dataArray);
 
-            JFreeChart chart = ChartFactory.createXYLineChart(
-                    "ROC Curve",
-                    "False Positive Rate",
-                    "True Positive Rate",
-                    rocDataset,
-                    PlotOrientation.VERTICAL,
-                    true,
-                    true,
-                    false
-            );
+            try {
+                ConfidenceIntervals.Result result = get();
+                if (result == null) {
+                    resultArea.append("Confidence intervals: cancelled.\n");
+                    return;
+                }
 
-            chart.getXYPlot().getRenderer().setSeriesPaint(0, Color.RED);
-            chart.getXYPlot().getRenderer().setSeriesStroke(0, new BasicStroke(2.0f));
+                resultArea.append("\n=== " + classifierName + " ("
+                        + (method == ConfidenceIntervals.Method.BOOTSTRAP ? "bootstrap" : "repeated 10-fold CV")
+                        + ") ===\n");
+                resultArea.append(ConfidenceIntervals.describe(result));
+                resultArea.append("Repetitions written to " + outputFile + "\n");
 
-            chartPanelContainer.removeAll();
-            ChartPanel chartPanel = new ChartPanel(chart);
-            chartPanelContainer.add(chartPanel, BorderLayout.CENTER);
-            chartPanelContainer.validate();
+                showROCBand(classifierName, result);
 
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
-                    "Error generating ROC curve: " + ex.getMessage(),
-                    "Error", JOptionPane.ERROR_MESSAGE);
+            } catch (Exception ex) {
+                Throwable cause = ex instanceof ExecutionException && ex.getCause() != null ? ex.getCause() : ex;
+                if (cause instanceof ExecutionException && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                cause.printStackTrace();
+                JOptionPane.showMessageDialog(BirdMigratoryStatusPredictor.this,
+                        "Error estimating confidence intervals: " + cause.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
         }
     }
 
-    private class Prediction {
-        double actual;
-        double prob;
+    private void showROCCurve(double[][] dataArray) {
+        showROCCurves(Collections.singletonMap("ROC Curve", dataArray));
+    }
+
+    private void showROCCurves(Map<String, double[][]> curves) {
+        DefaultXYDataset rocDataset = new DefaultXYDataset();
+        for (Map.Entry<String, double[][]> curve : curves.entrySet()) {
+            rocDataset.addSeries(curve.getKey(), curve.getValue());
+        }
+
+        JFreeChart chart = ChartFactory.createXYLineChart(
+                "ROC Curve",
+                "False Positive Rate",
+                "True Positive Rate",
+                rocDataset,
+                PlotOrientation.VERTICAL,
+                true,
+                true,
+                false
+        );
+
+        for (int i = 0; i < curves.size(); i++) {
+            chart.getXYPlot().getRenderer().setSeriesStroke(i, new BasicStroke(2.0f));
+        }
+        if (curves.size() == 1) {
+            chart.getXYPlot().getRenderer().setSeriesPaint(0, Color.RED);
+        }
 
-        public Prediction(double actual, double prob) {
-            this.actual = actual;
-            this.prob = prob;
+        chartPanelContainer.removeAll();
+        ChartPanel chartPanel = new ChartPanel(chart);
+        chartPanelContainer.add(chartPanel, BorderLayout.CENTER);
+        chartPanelContainer.validate();
+    }
+
+    /**
+     * The median ROC curve of a ConfidenceIntervals run, with the interval of the true
+     * positive rate drawn as a shaded band around it.
+     */
+    private void showROCBand(String classifierName, ConfidenceIntervals.Result result) {
+        YIntervalSeries series = new YIntervalSeries(String.format("%s (median, %.0f%% band)",
+                classifierName, result.level * 100));
+        for (int g = 0; g < result.fpr.length; g++) {
+            series.add(result.fpr[g], result.tprMedian[g], result.tprLower[g], result.tprUpper[g]);
         }
+        YIntervalSeriesCollection bandDataset = new YIntervalSeriesCollection();
+        bandDataset.addSeries(series);
+
+        JFreeChart chart = ChartFactory.createXYLineChart(
+                "ROC Curve",
+                "False Positive Rate",
+                "True Positive Rate",
+                bandDataset,
+                PlotOrientation.VERTICAL,
+                true,
+                true,
+                false
+        );
+
+        DeviationRenderer renderer = new DeviationRenderer(true, false);
+        renderer.setSeriesStroke(0, new BasicStroke(2.0f));
+        renderer.setSeriesPaint(0, Color.RED);
+        renderer.setSeriesFillPaint(0, new Color(255, 150, 150));
+        renderer.setAlpha(0.4f);
+        chart.getXYPlot().setRenderer(renderer);
+
+        chartPanelContainer.removeAll();
+        ChartPanel chartPanel = new ChartPanel(chart);
+        chartPanelContainer.add(chartPanel, BorderLayout.CENTER);
+        chartPanelContainer.validate();
     }
 
     public static void main(String[] args) {
+        if (args.length > 0) {
+            BatchRunner.main(args);
+            return;
+        }
 
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
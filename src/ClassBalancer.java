@@ -0,0 +1,117 @@
+import java.util.Random;
+
+/**
+ * Stratified class balancing over row indices of a ColumnStore. Classes are counted
+ * by value index in one pass and the rows are bucketed by class with a counting
+ * sort. No instance is copied: the result is a row-index array (and, when
+ * weighting, one weight per class) that ColumnStore.project() turns into views.
+ *
+ * OVERSAMPLE draws, with replacement, the same number of rows from every class
+ * present, keeping the original sample size, like Weka's Resample with
+ * biasToUniformClass=1. WEIGHT keeps every row once and weights each class by
+ * n / (classes * count), so every class carries the same total weight.
+ * The same seed always gives the same sample.
+ */
+public class ClassBalancer {
+
+    public enum Mode {
+        OVERSAMPLE, WEIGHT
+    }
+
+    public static class Sample {
+        public final Mode mode;
+        /** Store rows in the balanced sample; rows may repeat when oversampling. */
+        public final int[] rows;
+        /** Instance weight per class value, or null when oversampling. */
+        public final double[] classWeights;
+        public final int[] classCounts;
+        public final int[] sampleCounts;
+
+        Sample(Mode mode, int[] rows, double[] classWeights, int[] classCounts, int[] sampleCounts) {
+            this.mode = mode;
+            this.rows = rows;
+            this.classWeights = classWeights;
+            this.classCounts = classCounts;
+            this.sampleCounts = sampleCounts;
+        }
+    }
+
+    private final Mode mode;
+    private final long seed;
+
+    public ClassBalancer(Mode mode, long seed) {
+        this.mode = mode;
+        this.seed = seed;
+    }
+
+    /**
+     * Balances the rows of a class column holding value indices in [0, numClasses).
+     * Rows with a missing class are left out.
+     */
+    public Sample balance(double[] classColumn, int numClasses) {
+        int[] counts = new int[numClasses];
+        int[] classOf = new int[classColumn.length];
+        int labelled = 0;
+        for (int row = 0; row < classColumn.length; row++) {
+            double value = classColumn[row];
+            if (Double.isNaN(value)) {
+                classOf[row] = -1;
+                continue;
+            }
+            classOf[row] = (int) value;
+            counts[(int) value]++;
+            labelled++;
+        }
+
+        int present = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                present++;
+            }
+        }
+
+        if (mode == Mode.WEIGHT) {
+            int[] rows = new int[labelled];
+            for (int row = 0, i = 0; row < classOf.length; row++) {
+                if (classOf[row] >= 0) {
+                    rows[i++] = row;
+                }
+            }
+            double[] weights = new double[numClasses];
+            for (int c = 0; c < numClasses; c++) {
+                weights[c] = counts[c] > 0 ? (double) labelled / (present * counts[c]) : 0;
+            }
+            return new Sample(mode, rows, weights, counts, counts.clone());
+        }
+
+        // Counting sort: rows of class c end up in byClass[start[c] .. start[c] + counts[c]).
+        int[] start = new int[numClasses];
+        for (int c = 1; c < numClasses; c++) {
+            start[c] = start[c - 1] + counts[c - 1];
+        }
+        int[] next = start.clone();
+        int[] byClass = new int[labelled];
+        for (int row = 0; row < classOf.length; row++) {
+            if (classOf[row] >= 0) {
+                byClass[next[classOf[row]]++] = row;
+            }
+        }
+
+        Random random = new Random(seed);
+        int[] rows = new int[present > 0 ? labelled : 0];
+        int[] sampleCounts = new int[numClasses];
+        int out = 0;
+        int remainder = present > 0 ? labelled % present : 0;
+        for (int c = 0; c < numClasses; c++) {
+            if (counts[c] == 0) {
+                continue;
+            }
+            int target = labelled / present + (remainder-- > 0 ? 1 : 0);
+            for (int j = 0; j < target; j++) {
+                rows[out++] = byClass[start[c] + random.nextInt(counts[c])];
+            }
+            sampleCounts[c] = target;
+        }
+        return new Sample(mode, rows, null, counts, sampleCounts);
+    }
+}
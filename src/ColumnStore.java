@@ -0,0 +1,380 @@
+import weka.core.AbstractInstance;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-oriented copy of the loaded dataset: one double[] per kept attribute
+ * (numeric values, or value indices for nominal ones) plus the class column, built
+ * once when the CSV is loaded. Projections hand the
+ * Weka classifiers Instances whose rows are views onto these columns, so selecting
+ * features never copies attribute values.
+ */
+public class ColumnStore {
+
+    private final Attribute[] attributes;
+    private final double[][] columns;
+    private final Map<String, Integer> columnIndices = new HashMap<>();
+    private final int classColumn;
+    private final int numRows;
+    private String fingerprint;
+
+    public ColumnStore(Attribute[] attributes, double[][] columns, int classColumn, int numRows) {
+        this.attributes = attributes;
+        this.columns = columns;
+        this.classColumn = classColumn;
+        this.numRows = numRows;
+        for (int c = 0; c < attributes.length; c++) {
+            columnIndices.put(attributes[c].name(), c);
+        }
+    }
+
+    public ColumnStore(Instances dataset) {
+        List<Integer> sourceIndices = new ArrayList<>();
+        for (int i = 0; i < dataset.numAttributes(); i++) {
+            if (i != dataset.classIndex() && dataset.attribute(i).isNumeric()) {
+                sourceIndices.add(i);
+            }
+        }
+        sourceIndices.add(dataset.classIndex());
+
+        numRows = dataset.numInstances();
+        classColumn = sourceIndices.size() - 1;
+        attributes = new Attribute[sourceIndices.size()];
+        columns = new double[sourceIndices.size()][numRows];
+        for (int c = 0; c < sourceIndices.size(); c++) {
+            attributes[c] = dataset.attribute(sourceIndices.get(c));
+            columnIndices.put(attributes[c].name(), c);
+        }
+
+        for (int row = 0; row < numRows; row++) {
+            Instance instance = dataset.instance(row);
+            for (int c = 0; c < columns.length; c++) {
+                columns[c][row] = instance.value(sourceIndices.get(c));
+            }
+        }
+    }
+
+    public int numRows() {
+        return numRows;
+    }
+
+    public int numColumns() {
+        return columns.length;
+    }
+
+    public Attribute attribute(int column) {
+        return attributes[column];
+    }
+
+    public double[] column(int column) {
+        return columns[column];
+    }
+
+    public int classColumnIndex() {
+        return classColumn;
+    }
+
+    public List<String> numericAttributeNames() {
+        List<String> names = new ArrayList<>();
+        for (int c = 0; c < attributes.length; c++) {
+            if (c != classColumn && attributes[c].isNumeric()) {
+                names.add(attributes[c].name());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Every column but the class: numeric columns and included nominal ones.
+     */
+    public List<String> featureNames() {
+        List<String> names = new ArrayList<>();
+        for (int c = 0; c < attributes.length; c++) {
+            if (c != classColumn) {
+                names.add(attributes[c].name());
+            }
+        }
+        return names;
+    }
+
+    public Attribute classAttribute() {
+        return attributes[classColumn];
+    }
+
+    public double[] classColumn() {
+        return columns[classColumn];
+    }
+
+    /**
+     * Returns a new store holding this store's rows followed by those of more, which
+     * must have the same attributes.
+     */
+    public ColumnStore append(ColumnStore more) {
+        double[][] combined = new double[columns.length][];
+        for (int c = 0; c < columns.length; c++) {
+            combined[c] = Arrays.copyOf(columns[c], numRows + more.numRows);
+            System.arraycopy(more.columns[c], 0, combined[c], numRows, more.numRows);
+        }
+        return new ColumnStore(attributes, combined, classColumn, numRows + more.numRows);
+    }
+
+    public double[] column(String name) {
+        Integer c = columnIndices.get(name);
+        return c != null ? columns[c] : null;
+    }
+
+    /**
+     * SHA-1 over the attribute definitions and every column value, computed on first use.
+     */
+    public synchronized String fingerprint() {
+        if (fingerprint == null) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                for (Attribute attribute : attributes) {
+                    digest.update(attribute.toString().getBytes(StandardCharsets.UTF_8));
+                }
+                ByteBuffer block = ByteBuffer.allocate(8192 * Double.BYTES);
+                for (double[] column : columns) {
+                    for (int start = 0; start < column.length; start += 8192) {
+                        int count = Math.min(8192, column.length - start);
+                        block.clear();
+                        block.asDoubleBuffer().put(column, start, count);
+                        digest.update(block.array(), 0, count * Double.BYTES);
+                    }
+                }
+                StringBuilder hex = new StringBuilder();
+                for (byte b : digest.digest()) {
+                    hex.append(String.format("%02x", b));
+                }
+                fingerprint = hex.toString();
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        return fingerprint;
+    }
+
+    public Instances project(List<String> features) {
+        int[] rows = new int[numRows];
+        for (int i = 0; i < numRows; i++) {
+            rows[i] = i;
+        }
+        return project(features, rows);
+    }
+
+    public Instances project(List<String> features, int[] rows) {
+        return project(features, rows, null);
+    }
+
+    /**
+     * Projects the given features (plus the class) over the given rows, which may
+     * repeat. Only one small view object is allocated per row. With classWeights,
+     * each row is weighted by the entry for its class value.
+     */
+    public Instances project(List<String> features, int[] rows, double[] classWeights) {
+        int[] viewColumns = new int[features.size() + 1];
+        ArrayList<Attribute> header = new ArrayList<>();
+        for (int j = 0; j < features.size(); j++) {
+            Integer c = columnIndices.get(features.get(j));
+            if (c == null || c == classColumn) {
+                throw new IllegalArgumentException("Not a feature column: " + features.get(j));
+            }
+            viewColumns[j] = c;
+            // Copies, because building an Instances re-indexes the attributes it is given.
+            header.add((Attribute) attributes[c].copy());
+        }
+        viewColumns[features.size()] = classColumn;
+        header.add((Attribute) attributes[classColumn].copy());
+
+        ProjectedInstances projected = new ProjectedInstances(header, rows.length);
+        projected.setClassIndex(projected.numAttributes() - 1);
+        for (int row : rows) {
+            ColumnView view = new ColumnView(columns, viewColumns, row);
+            if (classWeights != null) {
+                view.setWeight(classWeights[(int) columns[classColumn][row]]);
+            }
+            view.setDataset(projected);
+            projected.addView(view);
+        }
+        return projected;
+    }
+
+    private static class ProjectedInstances extends Instances {
+        private static final long serialVersionUID = 1L;
+
+        ProjectedInstances(ArrayList<Attribute> header, int capacity) {
+            super("SelectedFeatures", header, capacity);
+        }
+
+        // Instances.add() copies its argument; views are already private to this set.
+        void addView(ColumnView view) {
+            m_Instances.add(view);
+        }
+    }
+
+    /**
+     * A row of a projection that reads straight from the store's columns. Writes are
+     * copy-on-write: the first setValue() gives the view its own value array.
+     */
+    private static class ColumnView extends AbstractInstance {
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] columns;
+        private final int[] viewColumns;
+        private final int row;
+
+        ColumnView(double[][] columns, int[] viewColumns, int row) {
+            this.columns = columns;
+            this.viewColumns = viewColumns;
+            this.row = row;
+            m_Weight = 1.0;
+        }
+
+        @Override
+        public double value(int attIndex) {
+            if (m_AttValues != null) {
+                return m_AttValues[attIndex];
+            }
+            return columns[viewColumns[attIndex]][row];
+        }
+
+        @Override
+        public double valueSparse(int indexOfIndex) {
+            return value(indexOfIndex);
+        }
+
+        @Override
+        public int index(int position) {
+            return position;
+        }
+
+        @Override
+        public int numAttributes() {
+            return m_AttValues != null ? m_AttValues.length : viewColumns.length;
+        }
+
+        @Override
+        public int numValues() {
+            return numAttributes();
+        }
+
+        @Override
+        public double[] toDoubleArray() {
+            if (m_AttValues != null) {
+                return m_AttValues.clone();
+            }
+            double[] values = new double[viewColumns.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = value(i);
+            }
+            return values;
+        }
+
+        @Override
+        public Object copy() {
+            ColumnView copy = new ColumnView(columns, viewColumns, row);
+            if (m_AttValues != null) {
+                copy.m_AttValues = m_AttValues.clone();
+            }
+            copy.m_Weight = m_Weight;
+            copy.m_Dataset = m_Dataset;
+            return copy;
+        }
+
+        @Override
+        public Instance copy(double[] values) {
+            DenseInstance copy = new DenseInstance(m_Weight, values);
+            copy.setDataset(m_Dataset);
+            return copy;
+        }
+
+        @Override
+        public void setValue(int attIndex, double value) {
+            materialize();
+            m_AttValues[attIndex] = value;
+        }
+
+        @Override
+        public void setValueSparse(int indexOfIndex, double value) {
+            setValue(indexOfIndex, value);
+        }
+
+        @Override
+        public void replaceMissingValues(double[] array) {
+            materialize();
+            for (int i = 0; i < m_AttValues.length; i++) {
+                if (Utils.isMissingValue(m_AttValues[i])) {
+                    m_AttValues[i] = array[i];
+                }
+            }
+        }
+
+        @Override
+        public Instance mergeInstance(Instance inst) {
+            return toDenseInstance().mergeInstance(inst);
+        }
+
+        @Override
+        public String toStringNoWeight() {
+            return toDenseInstance().toStringNoWeight();
+        }
+
+        @Override
+        public String toStringNoWeight(int afterDecimalPoint) {
+            return toDenseInstance().toStringNoWeight(afterDecimalPoint);
+        }
+
+        @Override
+        protected void forceDeleteAttributeAt(int position) {
+            materialize();
+            double[] values = new double[m_AttValues.length - 1];
+            System.arraycopy(m_AttValues, 0, values, 0, position);
+            System.arraycopy(m_AttValues, position + 1, values, position, values.length - position);
+            m_AttValues = values;
+        }
+
+        @Override
+        protected void forceInsertAttributeAt(int position) {
+            materialize();
+            double[] values = new double[m_AttValues.length + 1];
+            System.arraycopy(m_AttValues, 0, values, 0, position);
+            values[position] = Utils.missingValue();
+            System.arraycopy(m_AttValues, position, values, position + 1, m_AttValues.length - position);
+            m_AttValues = values;
+        }
+
+        @Override
+        public String getRevision() {
+            return "1";
+        }
+
+        private void materialize() {
+            if (m_AttValues == null) {
+                m_AttValues = toDoubleArray();
+            }
+        }
+
+        private DenseInstance toDenseInstance() {
+            DenseInstance dense = new DenseInstance(this);
+            dense.setDataset(m_Dataset);
+            return dense;
+        }
+
+        // Serialized models (e.g. IBk's training set) carry plain rows, not the whole store.
+        private Object writeReplace() {
+            return toDenseInstance();
+        }
+    }
+}
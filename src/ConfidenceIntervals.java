@@ -0,0 +1,331 @@
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Percentile confidence intervals for accuracy, AUC, and the precision and recall of
+ * the "Migratory" class. Each repetition uses seed CV_SEED + r. REPEATED_CV reruns
+ * 10-fold cross-validation with that seed, so repetition 0 is the number the
+ * classifier buttons show. BOOTSTRAP draws a bootstrap sample of the distinct store
+ * rows, balances the classes within it, trains on the result and tests on the store
+ * rows the sample left out. Because the sample is drawn before balancing, copies
+ * made by oversampling never end up on both sides.
+ *
+ * Repetitions run in parallel. Each one is appended to a CSV file as it finishes,
+ * with its metrics and its ROC curve sampled at ROC_GRID_POINTS false positive
+ * rates. Only fixed-size histograms are kept in memory, so the heap does not grow
+ * with the number of repetitions. Values are binned to 1e-4, which is also the
+ * precision of the reported bounds. The ROC band is the same percentile range of
+ * the true positive rate at each grid point.
+ */
+public class ConfidenceIntervals {
+
+    public static final int ROC_GRID_POINTS = 101;
+    private static final int HISTOGRAM_BINS = 10000;
+
+    public static final String[] METRICS = {"accuracy", "auc", "precision", "recall"};
+
+    public enum Method {
+        REPEATED_CV, BOOTSTRAP
+    }
+
+    public static class Interval {
+        public final String metric;
+        public final double mean;
+        public final double lower;
+        public final double upper;
+        public final long count;
+
+        Interval(String metric, double mean, double lower, double upper, long count) {
+            this.metric = metric;
+            this.mean = mean;
+            this.lower = lower;
+            this.upper = upper;
+            this.count = count;
+        }
+    }
+
+    public static class Result {
+        public final int repetitions;
+        public final double level;
+        public final List<Interval> intervals;
+        public final double[] fpr;
+        public final double[] tprLower;
+        public final double[] tprMedian;
+        public final double[] tprUpper;
+
+        Result(int repetitions, double level, List<Interval> intervals, double[] fpr, double[] tprLower,
+               double[] tprMedian, double[] tprUpper) {
+            this.repetitions = repetitions;
+            this.level = level;
+            this.intervals = intervals;
+            this.fpr = fpr;
+            this.tprLower = tprLower;
+            this.tprMedian = tprMedian;
+            this.tprUpper = tprUpper;
+        }
+    }
+
+    public interface Listener {
+        void repetitionCompleted(int completed, int total);
+
+        boolean isCancelled();
+    }
+
+    private static class Repetition {
+        int index;
+        long seed;
+        double[] values;
+    }
+
+    private interface Resampling {
+        /** Evaluates the classifier on one resampling of the data; null if cancelled. */
+        Evaluation evaluate(Classifier classifier, long seed, int index) throws Exception;
+    }
+
+    private final PredictionPipeline pipeline;
+    private final int parallelism;
+    private final double level;
+
+    public ConfidenceIntervals(PredictionPipeline pipeline, int parallelism, double level) {
+        this.pipeline = pipeline;
+        this.parallelism = Math.max(1, parallelism);
+        this.level = level;
+    }
+
+    public static File defaultOutputDirectory() {
+        return new File(System.getProperty("bird.repetitions.dir", System.getProperty("user.home")
+                + File.separator + ".bird-predictor" + File.separator + "repetitions"));
+    }
+
+    /**
+     * Runs the repetitions of the classifier on the features of the store, with the
+     * classes balanced by balanceMode, writing one CSV row per repetition to output.
+     * Returns null if cancelled.
+     */
+    public Result estimate(ColumnStore store, List<String> features, ClassBalancer.Mode balanceMode,
+                           String classifierName, Method method, int repetitions, File output,
+                           Listener listener) throws Exception {
+        CrossValidationEngine engine = new CrossValidationEngine(1);
+        engine.setMetrics(pipeline.metrics());
+        int posIndex;
+        Resampling resampling;
+        if (method == Method.REPEATED_CV) {
+            Instances balancedData = pipeline.projectFeatures(store, features,
+                    pipeline.balanceClasses(store, balanceMode));
+            posIndex = PredictionPipeline.positiveClassIndex(balancedData);
+            resampling = (classifier, seed, index) -> engine.crossValidate(classifier, balancedData,
+                    PredictionPipeline.CV_FOLDS, new Random(seed),
+                    (completed, numFolds, foldEval) -> !listener.isCancelled());
+        } else {
+            double[] classColumn = store.classColumn();
+            int numLabelled = 0;
+            for (double value : classColumn) {
+                if (!Double.isNaN(value)) {
+                    numLabelled++;
+                }
+            }
+            int[] labelledRows = new int[numLabelled];
+            for (int row = 0, i = 0; row < store.numRows(); row++) {
+                if (!Double.isNaN(classColumn[row])) {
+                    labelledRows[i++] = row;
+                }
+            }
+            posIndex = PredictionPipeline.positiveClassIndex(store.project(features, new int[0]));
+            resampling = (classifier, seed, index) -> bootstrap(store, features, balanceMode, labelledRows,
+                    classifier, seed, index);
+        }
+
+        double[] grid = new double[ROC_GRID_POINTS];
+        for (int g = 0; g < grid.length; g++) {
+            grid[g] = (double) g / (ROC_GRID_POINTS - 1);
+        }
+
+        // One histogram per metric, then one per ROC grid point.
+        int numValues = METRICS.length + ROC_GRID_POINTS;
+        int[][] histograms = new int[numValues][HISTOGRAM_BINS + 1];
+        double[] sums = new double[numValues];
+        long[] counts = new long[numValues];
+
+        if (output.getParentFile() != null) {
+            Files.createDirectories(output.getParentFile().toPath());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8))) {
+            StringBuilder header = new StringBuilder("repetition,seed");
+            for (String metric : METRICS) {
+                header.append(',').append(metric);
+            }
+            for (double x : grid) {
+                header.append(String.format(Locale.ROOT, ",tpr_%.2f", x));
+            }
+            out.println(header);
+
+            CompletionService<Repetition> completion = new ExecutorCompletionService<>(executor);
+            for (int r = 0; r < repetitions; r++) {
+                int index = r;
+                completion.submit(() -> repeat(resampling, classifierName, index, posIndex, grid, listener));
+            }
+
+            for (int done = 1; done <= repetitions; done++) {
+                Repetition repetition = completion.take().get();
+                if (repetition == null || listener.isCancelled()) {
+                    return null;
+                }
+                StringBuilder line = new StringBuilder();
+                line.append(repetition.index).append(',').append(repetition.seed);
+                for (int v = 0; v < numValues; v++) {
+                    double value = repetition.values[v];
+                    line.append(',').append(Double.isNaN(value) ? "" : String.valueOf(value));
+                    if (!Double.isNaN(value)) {
+                        histograms[v][bin(value)]++;
+                        sums[v] += value;
+                        counts[v]++;
+                    }
+                }
+                out.println(line);
+                out.flush();
+                listener.repetitionCompleted(done, repetitions);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        double lowerQuantile = (1 - level) / 2;
+        double upperQuantile = 1 - lowerQuantile;
+        List<Interval> intervals = new ArrayList<>();
+        for (int m = 0; m < METRICS.length; m++) {
+            intervals.add(new Interval(METRICS[m], counts[m] > 0 ? sums[m] / counts[m] : Double.NaN,
+                    quantile(histograms[m], counts[m], lowerQuantile),
+                    quantile(histograms[m], counts[m], upperQuantile), counts[m]));
+        }
+        double[] tprLower = new double[ROC_GRID_POINTS];
+        double[] tprMedian = new double[ROC_GRID_POINTS];
+        double[] tprUpper = new double[ROC_GRID_POINTS];
+        for (int g = 0; g < ROC_GRID_POINTS; g++) {
+            int v = METRICS.length + g;
+            tprLower[g] = quantile(histograms[v], counts[v], lowerQuantile);
+            tprMedian[g] = quantile(histograms[v], counts[v], 0.5);
+            tprUpper[g] = quantile(histograms[v], counts[v], upperQuantile);
+        }
+        return new Result(repetitions, level, intervals, grid, tprLower, tprMedian, tprUpper);
+    }
+
+    private Repetition repeat(Resampling resampling, String classifierName, int index, int posIndex,
+                              double[] grid, Listener listener) throws Exception {
+        if (listener.isCancelled()) {
+            return null;
+        }
+        long seed = PredictionPipeline.CV_SEED + index;
+        Evaluation eval = resampling.evaluate(pipeline.newClassifier(classifierName), seed, index);
+        if (eval == null) {
+            return null;
+        }
+
+        RocCurve roc = RocCurve.fromPredictions(eval.predictions(), posIndex);
+        double[] tpr = roc.tprAt(grid);
+        Repetition repetition = new Repetition();
+        repetition.index = index;
+        repetition.seed = seed;
+        repetition.values = new double[METRICS.length + tpr.length];
+        repetition.values[0] = eval.pctCorrect() / 100;
+        repetition.values[1] = roc.auc();
+        repetition.values[2] = eval.numTruePositives(posIndex) + eval.numFalsePositives(posIndex) > 0
+                ? eval.precision(posIndex) : Double.NaN;
+        repetition.values[3] = eval.recall(posIndex);
+        System.arraycopy(tpr, 0, repetition.values, METRICS.length, tpr.length);
+        return repetition;
+    }
+
+    // Draws the bootstrap sample from the distinct labelled rows, balances the classes
+    // within it, and tests on the labelled rows it did not draw.
+    private static Evaluation bootstrap(ColumnStore store, List<String> features, ClassBalancer.Mode balanceMode,
+                                        int[] labelledRows, Classifier classifier, long seed, int index)
+            throws Exception {
+        Random random = new Random(seed);
+        double[] classColumn = store.classColumn();
+        int n = labelledRows.length;
+        boolean[] inBag = new boolean[store.numRows()];
+        int[] bagRows = new int[n];
+        double[] bagClasses = new double[n];
+        for (int i = 0; i < n; i++) {
+            int row = labelledRows[random.nextInt(n)];
+            inBag[row] = true;
+            bagRows[i] = row;
+            bagClasses[i] = classColumn[row];
+        }
+
+        ClassBalancer.Sample bag = new ClassBalancer(balanceMode, seed)
+                .balance(bagClasses, store.classAttribute().numValues());
+        int[] trainRows = new int[bag.rows.length];
+        for (int i = 0; i < trainRows.length; i++) {
+            trainRows[i] = bagRows[bag.rows[i]];
+        }
+
+        int numOutOfBag = 0;
+        for (int row : labelledRows) {
+            if (!inBag[row]) {
+                numOutOfBag++;
+            }
+        }
+        if (numOutOfBag == 0) {
+            throw new Exception("Bootstrap sample " + index + " left no rows to test on.");
+        }
+        int[] testRows = new int[numOutOfBag];
+        for (int i = 0, t = 0; i < n; i++) {
+            if (!inBag[labelledRows[i]]) {
+                testRows[t++] = labelledRows[i];
+            }
+        }
+
+        Instances train = store.project(features, trainRows, bag.classWeights);
+        Instances test = store.project(features, testRows);
+        classifier.buildClassifier(train);
+        Evaluation eval = new Evaluation(train);
+        eval.evaluateModel(classifier, test);
+        return eval;
+    }
+
+    private static int bin(double value) {
+        return (int) Math.round(Math.max(0, Math.min(1, value)) * HISTOGRAM_BINS);
+    }
+
+    // The smallest binned value with at least quantile * count values at or below it.
+    private static double quantile(int[] histogram, long count, double quantile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long target = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int b = 0; b < histogram.length; b++) {
+            seen += histogram[b];
+            if (seen >= target) {
+                return (double) b / HISTOGRAM_BINS;
+            }
+        }
+        return 1;
+    }
+
+    public static String describe(Result result) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%.0f%% intervals over %d repetitions:%n", result.level * 100, result.repetitions));
+        for (Interval interval : result.intervals) {
+            sb.append(String.format("%-10s mean %.4f  [%.4f, %.4f]%n", interval.metric, interval.mean,
+                    interval.lower, interval.upper));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,158 @@
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.AggregateableEvaluation;
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs k-fold cross-validation with each fold's model built on a fork-join pool.
+ * Folds are split exactly like Evaluation.crossValidateModel and the per-fold
+ * evaluations are merged in fold order, so the results match it for the same
+ * Random seed regardless of the parallelism level.
+ *
+ * The default parallelism is the number of available processors and can be
+ * overridden with -Dbird.cv.parallelism=N. With a parallelism of 1 the folds run
+ * in order on the calling thread, which lets callers that already parallelize
+ * across runs share one engine and stop a run after its first few folds.
+ */
+public class CrossValidationEngine {
+
+    public interface FoldListener {
+        /**
+         * Called once per finished fold with that fold's own evaluation. Calls are
+         * serialized but arrive in completion order. Return false to stop the run.
+         */
+        boolean foldCompleted(int completedFolds, int numFolds, Evaluation foldEvaluation);
+    }
+
+    private final ForkJoinPool pool;
+    private PipelineMetrics metrics;
+
+    public CrossValidationEngine() {
+        this(Integer.getInteger("bird.cv.parallelism", Runtime.getRuntime().availableProcessors()));
+    }
+
+    public CrossValidationEngine(int parallelism) {
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    public int getParallelism() {
+        return pool != null ? pool.getParallelism() : 1;
+    }
+
+    /**
+     * Records each fold's time and allocation under PipelineMetrics.CV_FOLD.
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public Evaluation crossValidate(Classifier classifier, Instances data, int numFolds,
+                                    Random random, FoldListener listener) throws Exception {
+        data = new Instances(data);
+        data.randomize(random);
+        if (data.classAttribute().isNominal()) {
+            data.stratify(numFolds);
+        }
+
+        // Splits consume the shared Random, so they are made up front in fold order.
+        Instances[] trainSets = new Instances[numFolds];
+        Instances[] testSets = new Instances[numFolds];
+        for (int i = 0; i < numFolds; i++) {
+            trainSets[i] = data.trainCV(numFolds, i, random);
+            testSets[i] = data.testCV(numFolds, i);
+        }
+
+        FoldRun run = new FoldRun(numFolds, listener, metrics);
+        Evaluation[] foldEvals = new Evaluation[numFolds];
+
+        if (pool == null) {
+            for (int i = 0; i < numFolds && !run.stopped; i++) {
+                foldEvals[i] = run.evaluateFold(classifier, trainSets[i], testSets[i]);
+            }
+            return run.stopped ? null : aggregate(data, foldEvals);
+        }
+
+        List<ForkJoinTask<Evaluation>> tasks = new ArrayList<>();
+        for (int i = 0; i < numFolds; i++) {
+            final Instances train = trainSets[i];
+            final Instances test = testSets[i];
+            tasks.add(pool.submit(() -> run.evaluateFold(classifier, train, test)));
+        }
+
+        try {
+            for (int i = 0; i < numFolds; i++) {
+                foldEvals[i] = tasks.get(i).get();
+            }
+        } catch (ExecutionException ex) {
+            run.stop(tasks);
+            throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+        } catch (InterruptedException ex) {
+            run.stop(tasks);
+            throw ex;
+        }
+
+        return run.stopped ? null : aggregate(data, foldEvals);
+    }
+
+    private Evaluation aggregate(Instances data, Evaluation[] foldEvals) throws Exception {
+        AggregateableEvaluation eval = new AggregateableEvaluation(data);
+        for (Evaluation foldEval : foldEvals) {
+            eval.aggregate(foldEval);
+        }
+        return eval;
+    }
+
+    private static class FoldRun {
+        private final int numFolds;
+        private final FoldListener listener;
+        private final PipelineMetrics metrics;
+        private volatile boolean stopped = false;
+        private int completedFolds = 0;
+
+        FoldRun(int numFolds, FoldListener listener, PipelineMetrics metrics) {
+            this.numFolds = numFolds;
+            this.listener = listener;
+            this.metrics = metrics;
+        }
+
+        Evaluation evaluateFold(Classifier classifier, Instances train, Instances test) throws Exception {
+            if (stopped) {
+                return null;
+            }
+
+            PipelineMetrics.Sample sample = metrics != null
+                    ? metrics.begin(PipelineMetrics.CV_FOLD, classifier.getClass().getSimpleName()) : null;
+            Evaluation foldEval = new Evaluation(train);
+            foldEval.setPriors(train);
+            Classifier foldClassifier = AbstractClassifier.makeCopy(classifier);
+            foldClassifier.buildClassifier(train);
+            foldEval.evaluateModel(foldClassifier, test);
+            if (sample != null) {
+                sample.end(train.numInstances() + test.numInstances());
+            }
+
+            synchronized (this) {
+                completedFolds++;
+                if (listener != null && !stopped && !listener.foldCompleted(completedFolds, numFolds, foldEval)) {
+                    stopped = true;
+                }
+            }
+            return foldEval;
+        }
+
+        void stop(List<ForkJoinTask<Evaluation>> tasks) {
+            stopped = true;
+            for (ForkJoinTask<Evaluation> task : tasks) {
+                task.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+import weka.core.Attribute;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * On-disk cache of parsed datasets. Each entry holds a ColumnStore's columns,
+ * attribute metadata and class column in a flat binary file that is memory-mapped
+ * when read back. Entries are keyed by the CSV's absolute path and the loader
+ * options. They are dropped when the CSV's size or modification time no longer
+ * match. Least recently used entries are evicted once the cache directory is over
+ * its size cap.
+ *
+ * The directory defaults to ~/.bird-predictor/cache (-Dbird.cache.dir) and the cap
+ * to 1 GB (-Dbird.cache.maxBytes).
+ */
+public class DatasetCache {
+
+    private static final int MAGIC = 0x42495244;
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".bin";
+
+    private final Path directory;
+    private final long maxBytes;
+    private long coldLoadNanos;
+
+    public DatasetCache() {
+        this(new File(System.getProperty("bird.cache.dir",
+                        System.getProperty("user.home") + File.separator + ".bird-predictor" + File.separator + "cache")).toPath(),
+                Long.getLong("bird.cache.maxBytes", 1L << 30));
+    }
+
+    public DatasetCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached store for the file, or null if there is no valid entry.
+     * On a hit, getColdLoadNanos() tells how long the original parse took.
+     */
+    public ColumnStore get(File csv, String options) {
+        Path entry = entryPath(csv, options);
+        if (!Files.exists(entry)) {
+            return null;
+        }
+
+        try {
+            // Checked with a plain read first: a mapped file cannot be deleted on Windows.
+            if (!isCurrent(entry, csv, options)) {
+                Files.deleteIfExists(entry);
+                return null;
+            }
+        } catch (Exception ex) {
+            System.err.println("Ignoring unreadable dataset cache entry " + entry + ": " + ex.getMessage());
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.position(8);
+            readString(buffer);
+            readString(buffer);
+            buffer.position(buffer.position() + 16);
+            long cachedColdLoadNanos = buffer.getLong();
+
+            int numRows = buffer.getInt();
+            int numColumns = buffer.getInt();
+            int classColumn = buffer.getInt();
+            Attribute[] attributes = new Attribute[numColumns];
+            for (int c = 0; c < numColumns; c++) {
+                String name = readString(buffer);
+                int numValues = buffer.getInt();
+                if (numValues < 0) {
+                    attributes[c] = new Attribute(name);
+                } else {
+                    List<String> values = new ArrayList<>(numValues);
+                    for (int v = 0; v < numValues; v++) {
+                        values.add(readString(buffer));
+                    }
+                    attributes[c] = new Attribute(name, values);
+                }
+            }
+
+            buffer.position((buffer.position() + 7) & ~7);
+            double[][] columns = new double[numColumns][numRows];
+            for (int c = 0; c < numColumns; c++) {
+                buffer.asDoubleBuffer().get(columns[c]);
+                buffer.position(buffer.position() + numRows * Double.BYTES);
+            }
+
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            coldLoadNanos = cachedColdLoadNanos;
+            return new ColumnStore(attributes, columns, classColumn, numRows);
+
+        } catch (Exception ex) {
+            System.err.println("Ignoring unreadable dataset cache entry " + entry + ": " + ex.getMessage());
+            try {
+                Files.deleteIfExists(entry);
+            } catch (IOException ignored) {
+            }
+            return null;
+        }
+    }
+
+    private static boolean isCurrent(Path entry, File csv, String options) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            return in.readInt() == MAGIC && in.readInt() == VERSION
+                    && readString(in).equals(csv.getAbsolutePath())
+                    && readString(in).equals(options)
+                    && in.readLong() == csv.length()
+                    && in.readLong() == csv.lastModified();
+        }
+    }
+
+    public long getColdLoadNanos() {
+        return coldLoadNanos;
+    }
+
+    public void put(File csv, String options, ColumnStore store, long loadNanos) throws IOException {
+        Files.createDirectories(directory);
+        Path entry = entryPath(csv, options);
+        Path temp = Files.createTempFile(directory, "entry", ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(headerSize(csv, options, store));
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            writeString(header, csv.getAbsolutePath());
+            writeString(header, options);
+            header.putLong(csv.length());
+            header.putLong(csv.lastModified());
+            header.putLong(loadNanos);
+            header.putInt(store.numRows());
+            header.putInt(store.numColumns());
+            header.putInt(store.classColumnIndex());
+            for (int c = 0; c < store.numColumns(); c++) {
+                Attribute attribute = store.attribute(c);
+                writeString(header, attribute.name());
+                if (attribute.isNominal()) {
+                    header.putInt(attribute.numValues());
+                    for (int v = 0; v < attribute.numValues(); v++) {
+                        writeString(header, attribute.value(v));
+                    }
+                } else {
+                    header.putInt(-1);
+                }
+            }
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+
+            ByteBuffer block = ByteBuffer.allocate(1 << 20);
+            for (int c = 0; c < store.numColumns(); c++) {
+                double[] column = store.column(c);
+                int written = 0;
+                while (written < column.length) {
+                    int count = Math.min(column.length - written, block.capacity() / Double.BYTES);
+                    block.clear();
+                    block.asDoubleBuffer().put(column, written, count);
+                    block.limit(count * Double.BYTES);
+                    while (block.hasRemaining()) {
+                        channel.write(block);
+                    }
+                    written += count;
+                }
+            }
+        } catch (IOException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+
+        Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        evict(entry);
+    }
+
+    private void evict(Path keep) throws IOException {
+        File[] entries = directory.toFile().listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (entries == null) {
+            return;
+        }
+
+        long total = 0;
+        for (File entry : entries) {
+            total += entry.length();
+        }
+
+        List<File> oldestFirst = new ArrayList<>(Arrays.asList(entries));
+        oldestFirst.sort((f1, f2) -> Long.compare(f1.lastModified(), f2.lastModified()));
+        for (File entry : oldestFirst) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (!entry.toPath().equals(keep)) {
+                total -= entry.length();
+                Files.deleteIfExists(entry.toPath());
+            }
+        }
+    }
+
+    private Path entryPath(File csv, String options) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest((csv.getAbsolutePath() + "\n" + options).getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : hash) {
+                name.append(String.format("%02x", b));
+            }
+            return directory.resolve(name + SUFFIX);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static int headerSize(File csv, String options, ColumnStore store) {
+        int size = 4 + 4 + stringSize(csv.getAbsolutePath()) + stringSize(options) + 8 + 8 + 8 + 4 + 4 + 4;
+        for (int c = 0; c < store.numColumns(); c++) {
+            Attribute attribute = store.attribute(c);
+            size += stringSize(attribute.name()) + 4;
+            if (attribute.isNominal()) {
+                for (int v = 0; v < attribute.numValues(); v++) {
+                    size += stringSize(attribute.value(v));
+                }
+            }
+        }
+        // Pad so the column data starts 8-byte aligned in the mapped file.
+        return (size + 7) & ~7;
+    }
+
+    private static int stringSize(String value) {
+        return 4 + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
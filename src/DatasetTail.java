@@ -0,0 +1,61 @@
+import java.io.File;
+
+/**
+ * Follows a dataset file that grows by appended rows. Each poll() reads only the
+ * complete lines written since the previous one, parsed against the loaded store's
+ * attributes, and extends the store with them. Whole batch files with the same
+ * columns can be added with append().
+ */
+public class DatasetTail {
+
+    private final File file;
+    private ColumnStore store;
+    private long offset;
+
+    /**
+     * @param offset where the rows already in store end, normally the file length at load time
+     */
+    public DatasetTail(File file, ColumnStore store, long offset) {
+        this.file = file;
+        this.store = store;
+        this.offset = offset;
+    }
+
+    public ColumnStore store() {
+        return store;
+    }
+
+    /**
+     * Returns the rows appended since the last call, or null if there are none.
+     */
+    public ColumnStore poll() throws Exception {
+        long length = file.length();
+        if (length < offset) {
+            throw new Exception("The dataset file was truncated or replaced. Please load it again.");
+        }
+        if (length == offset) {
+            return null;
+        }
+
+        StreamingCsvLoader loader = new StreamingCsvLoader(store.classAttribute().name());
+        ColumnStore newRows = loader.loadAppended(file, store, offset);
+        offset = loader.getBytesRead();
+        return extend(newRows);
+    }
+
+    /**
+     * Adds the rows of a separate CSV file with the same columns.
+     */
+    public ColumnStore append(File batch) throws Exception {
+        StreamingCsvLoader loader = new StreamingCsvLoader(store.classAttribute().name());
+        return extend(loader.loadAppended(batch, store, 0));
+    }
+
+    private ColumnStore extend(ColumnStore newRows) {
+        if (newRows.numRows() == 0) {
+            return null;
+        }
+        store = store.append(newRows);
+        return newRows;
+    }
+}
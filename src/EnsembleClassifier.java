@@ -0,0 +1,263 @@
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.functions.Logistic;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Combines several classifiers trained on the same data. SOFT_VOTE averages their
+ * class distributions. STACKING feeds them to a logistic regression. That model is
+ * trained on out-of-fold member predictions from an internal STACKING_FOLDS-fold
+ * cross-validation, so it learns from predictions on rows the members did not see.
+ *
+ * Members are built at the same time from the one training set, which they only
+ * read. They also score at the same time: one row at a time through
+ * distributionForInstance(), or a whole test fold at a time through
+ * distributionsForInstances(), which Evaluation uses. The work runs on a shared
+ * daemon pool (-Dbird.ensemble.parallelism, default the number of processors).
+ * Callers such as CrossValidationEngine can therefore run several ensembles at once
+ * without one pool per model.
+ */
+public class EnsembleClassifier extends AbstractClassifier {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int STACKING_FOLDS = 5;
+    private static final long STACKING_SEED = 1;
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+            Math.max(1, Integer.getInteger("bird.ensemble.parallelism", Runtime.getRuntime().availableProcessors())),
+            runnable -> {
+                Thread thread = new Thread(runnable, "ensemble");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    public enum Combination {
+        SOFT_VOTE, STACKING
+    }
+
+    private final String[] memberNames;
+    private final Classifier[] templates;
+    private final Combination combination;
+
+    private Classifier[] members;
+    private Classifier metaModel;
+    private Instances metaHeader;
+
+    public EnsembleClassifier(String[] memberNames, Classifier[] templates, Combination combination) {
+        this.memberNames = memberNames;
+        this.templates = templates;
+        this.combination = combination;
+    }
+
+    public Combination getCombination() {
+        return combination;
+    }
+
+    public String[] getMemberNames() {
+        return memberNames;
+    }
+
+    @Override
+    public void buildClassifier(Instances data) throws Exception {
+        Instances train = new Instances(data);
+        train.deleteWithMissingClass();
+
+        if (combination == Combination.STACKING) {
+            buildMetaModel(train);
+        }
+        members = buildMembers(train);
+    }
+
+    private Classifier[] buildMembers(Instances train) throws Exception {
+        List<Callable<Classifier>> builds = new ArrayList<>();
+        for (Classifier template : templates) {
+            builds.add(() -> {
+                Classifier member = AbstractClassifier.makeCopy(template);
+                member.buildClassifier(train);
+                return member;
+            });
+        }
+        return invokeAll(builds).toArray(new Classifier[0]);
+    }
+
+    // Every (fold, member) pair is built at once. Their out-of-fold distributions
+    // become the meta model's training rows, in the order of the shuffled copy.
+    private void buildMetaModel(Instances train) throws Exception {
+        Instances shuffled = new Instances(train);
+        Random random = new Random(STACKING_SEED);
+        shuffled.randomize(random);
+        shuffled.stratify(STACKING_FOLDS);
+        int numFolds = Math.min(STACKING_FOLDS, shuffled.numInstances());
+
+        List<Callable<double[][]>> folds = new ArrayList<>();
+        for (int fold = 0; fold < numFolds; fold++) {
+            Instances foldTrain = shuffled.trainCV(numFolds, fold, random);
+            Instances foldTest = shuffled.testCV(numFolds, fold);
+            for (Classifier template : templates) {
+                folds.add(() -> {
+                    Classifier member = AbstractClassifier.makeCopy(template);
+                    member.buildClassifier(foldTrain);
+                    return scoreAll(member, foldTest);
+                });
+            }
+        }
+        List<double[][]> scored = invokeAll(folds);
+
+        metaHeader = metaHeader(train);
+        Instances metaData = new Instances(metaHeader, shuffled.numInstances());
+        for (int fold = 0; fold < numFolds; fold++) {
+            Instances foldTest = shuffled.testCV(numFolds, fold);
+            double[][][] distributions = new double[templates.length][][];
+            for (int m = 0; m < templates.length; m++) {
+                distributions[m] = scored.get(fold * templates.length + m);
+            }
+            for (int i = 0; i < foldTest.numInstances(); i++) {
+                double[][] rowDistributions = new double[templates.length][];
+                for (int m = 0; m < templates.length; m++) {
+                    rowDistributions[m] = distributions[m][i];
+                }
+                Instance metaInstance = metaInstance(rowDistributions);
+                metaInstance.setClassValue(foldTest.instance(i).classValue());
+                metaInstance.setWeight(foldTest.instance(i).weight());
+                metaData.add(metaInstance);
+            }
+        }
+
+        Logistic logistic = new Logistic();
+        logistic.setRidge(1e-4);
+        logistic.buildClassifier(metaData);
+        metaModel = logistic;
+    }
+
+    private Instances metaHeader(Instances train) {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        Attribute classAttribute = train.classAttribute();
+        for (String name : memberNames) {
+            for (int c = 0; c < classAttribute.numValues(); c++) {
+                attributes.add(new Attribute(name + "=" + classAttribute.value(c)));
+            }
+        }
+        attributes.add((Attribute) classAttribute.copy());
+        Instances header = new Instances("stacking", attributes, 0);
+        header.setClassIndex(header.numAttributes() - 1);
+        return header;
+    }
+
+    private Instance metaInstance(double[][] memberDistributions) {
+        double[] values = new double[metaHeader.numAttributes()];
+        int index = 0;
+        for (double[] distribution : memberDistributions) {
+            for (double p : distribution) {
+                values[index++] = p;
+            }
+        }
+        Instance instance = new DenseInstance(1.0, values);
+        instance.setDataset(metaHeader);
+        instance.setClassMissing();
+        return instance;
+    }
+
+    /**
+     * Each member's class distribution for the instance, scored concurrently.
+     */
+    public double[][] memberDistributions(Instance instance) throws Exception {
+        List<Callable<double[]>> scores = new ArrayList<>();
+        for (Classifier member : members) {
+            scores.add(() -> member.distributionForInstance(instance));
+        }
+        return invokeAll(scores).toArray(new double[0][]);
+    }
+
+    @Override
+    public double[] distributionForInstance(Instance instance) throws Exception {
+        return combine(memberDistributions(instance));
+    }
+
+    @Override
+    public boolean implementsMoreEfficientBatchPrediction() {
+        return true;
+    }
+
+    @Override
+    public double[][] distributionsForInstances(Instances batch) throws Exception {
+        List<Callable<double[][]>> scores = new ArrayList<>();
+        for (Classifier member : members) {
+            scores.add(() -> scoreAll(member, batch));
+        }
+        List<double[][]> memberScores = invokeAll(scores);
+
+        double[][] distributions = new double[batch.numInstances()][];
+        for (int i = 0; i < distributions.length; i++) {
+            double[][] rowDistributions = new double[members.length][];
+            for (int m = 0; m < members.length; m++) {
+                rowDistributions[m] = memberScores.get(m)[i];
+            }
+            distributions[i] = combine(rowDistributions);
+        }
+        return distributions;
+    }
+
+    private double[] combine(double[][] memberDistributions) throws Exception {
+        if (combination == Combination.STACKING) {
+            return metaModel.distributionForInstance(metaInstance(memberDistributions));
+        }
+        double[] average = new double[memberDistributions[0].length];
+        for (double[] distribution : memberDistributions) {
+            for (int c = 0; c < average.length; c++) {
+                average[c] += distribution[c] / memberDistributions.length;
+            }
+        }
+        return average;
+    }
+
+    private static double[][] scoreAll(Classifier classifier, Instances data) throws Exception {
+        double[][] distributions = new double[data.numInstances()][];
+        for (int i = 0; i < distributions.length; i++) {
+            distributions[i] = classifier.distributionForInstance(data.instance(i));
+        }
+        return distributions;
+    }
+
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks) throws Exception {
+        List<Future<T>> futures = POOL.invokeAll(tasks);
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException ex) {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+            throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+        }
+        return results;
+    }
+
+    @Override
+    public String toString() {
+        if (members == null) {
+            return "EnsembleClassifier: no model built yet.";
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("Ensemble (").append(combination == Combination.STACKING ? "stacking" : "soft vote")
+                .append(") of ").append(String.join(", ", memberNames)).append("\n");
+        if (metaModel != null) {
+            sb.append("\n").append(metaModel);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,192 @@
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Greedy wrapper feature selection. Forward search starts with no features and adds
+ * the one that raises cross-validated accuracy most, until no addition helps.
+ * Backward search starts with every feature and drops the one whose removal keeps
+ * accuracy highest, as long as accuracy does not fall.
+ *
+ * All candidates of a step are cross-validated at the same time. They are
+ * projections of one balanced sample and use the same seed, so every candidate is
+ * scored on the same fold split and only the features differ. A candidate is
+ * stopped after PRUNE_AFTER_FOLDS folds if its running accuracy is more than
+ * PRUNE_MARGIN points below the subset it has to beat.
+ */
+public class FeatureSelector {
+
+    private static final int PRUNE_AFTER_FOLDS = 3;
+    private static final double PRUNE_MARGIN = 5.0;
+
+    public enum Direction {
+        FORWARD, BACKWARD
+    }
+
+    public static class Step {
+        /** The feature added or removed, or null for the starting set of a backward search. */
+        public final String change;
+        public final boolean added;
+        public final List<String> features;
+        public final double accuracy;
+        public final double auc;
+        public final int candidates;
+        public final int pruned;
+
+        Step(String change, boolean added, List<String> features, double accuracy, double auc, int candidates,
+             int pruned) {
+            this.change = change;
+            this.added = added;
+            this.features = features;
+            this.accuracy = accuracy;
+            this.auc = auc;
+            this.candidates = candidates;
+            this.pruned = pruned;
+        }
+    }
+
+    public interface Listener {
+        void stepCompleted(Step step);
+
+        boolean isCancelled();
+    }
+
+    private static class Candidate {
+        String change;
+        List<String> features;
+        double accuracy;
+        double auc = Double.NaN;
+        boolean pruned;
+    }
+
+    private final PredictionPipeline pipeline;
+    private final int parallelism;
+
+    public FeatureSelector(PredictionPipeline pipeline, int parallelism) {
+        this.pipeline = pipeline;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Runs the search over the given features and returns the accepted steps; the
+     * last step's features are the selected subset. Returns null if cancelled.
+     */
+    public List<Step> select(ColumnStore store, ClassBalancer.Sample sample, List<String> features,
+                             String classifierName, Direction direction, Listener listener) throws Exception {
+        int posIndex = store.classAttribute().indexOfValue("Migratory");
+        CrossValidationEngine engine = new CrossValidationEngine(1);
+        engine.setMetrics(pipeline.metrics());
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Step> steps = new ArrayList<>();
+            List<String> current = new ArrayList<>();
+            double currentAccuracy = Double.NEGATIVE_INFINITY;
+
+            if (direction == Direction.BACKWARD) {
+                current.addAll(features);
+                Candidate all = new Candidate();
+                all.features = current;
+                evaluate(engine, store, sample, classifierName, posIndex, all, Double.NEGATIVE_INFINITY, listener);
+                if (listener.isCancelled()) {
+                    return null;
+                }
+                currentAccuracy = all.accuracy;
+                Step step = new Step(null, false, new ArrayList<>(current), all.accuracy, all.auc, 1, 0);
+                steps.add(step);
+                listener.stepCompleted(step);
+            }
+
+            while (direction == Direction.FORWARD ? current.size() < features.size() : current.size() > 1) {
+                List<Candidate> candidates = new ArrayList<>();
+                for (String feature : features) {
+                    boolean selected = current.contains(feature);
+                    if (selected == (direction == Direction.FORWARD)) {
+                        continue;
+                    }
+                    Candidate candidate = new Candidate();
+                    candidate.change = feature;
+                    candidate.features = new ArrayList<>(current);
+                    if (direction == Direction.FORWARD) {
+                        candidate.features.add(feature);
+                    } else {
+                        candidate.features.remove(feature);
+                    }
+                    candidates.add(candidate);
+                }
+
+                double baseline = currentAccuracy;
+                CompletionService<Candidate> completion = new ExecutorCompletionService<>(executor);
+                for (Candidate candidate : candidates) {
+                    completion.submit(() -> evaluate(engine, store, sample, classifierName, posIndex, candidate,
+                            baseline, listener));
+                }
+                Candidate best = null;
+                int pruned = 0;
+                for (int i = 0; i < candidates.size(); i++) {
+                    Candidate candidate = completion.take().get();
+                    if (candidate.pruned) {
+                        pruned++;
+                    } else if (best == null || candidate.accuracy > best.accuracy
+                            || (candidate.accuracy == best.accuracy && candidate.auc > best.auc)) {
+                        best = candidate;
+                    }
+                }
+                if (listener.isCancelled()) {
+                    return null;
+                }
+
+                boolean accepted = best != null && (direction == Direction.FORWARD
+                        ? best.accuracy > currentAccuracy : best.accuracy >= currentAccuracy);
+                if (!accepted) {
+                    break;
+                }
+                current = best.features;
+                currentAccuracy = best.accuracy;
+                Step step = new Step(best.change, direction == Direction.FORWARD, new ArrayList<>(current),
+                        best.accuracy, best.auc, candidates.size(), pruned);
+                steps.add(step);
+                listener.stepCompleted(step);
+            }
+            return steps;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Candidate evaluate(CrossValidationEngine engine, ColumnStore store, ClassBalancer.Sample sample,
+                               String classifierName, int posIndex, Candidate candidate, double baseline,
+                               Listener listener) throws Exception {
+        Instances data = pipeline.projectFeatures(store, candidate.features, sample);
+        double[] correctAndTotal = new double[2];
+        Evaluation eval = engine.crossValidate(pipeline.newClassifier(classifierName), data,
+                PredictionPipeline.CV_FOLDS, new Random(PredictionPipeline.CV_SEED),
+                (completed, numFolds, foldEval) -> {
+                    correctAndTotal[0] += foldEval.correct();
+                    correctAndTotal[1] += foldEval.numInstances();
+                    if (listener.isCancelled()) {
+                        return false;
+                    }
+                    if (completed >= PRUNE_AFTER_FOLDS && completed < numFolds
+                            && 100.0 * correctAndTotal[0] / correctAndTotal[1] < baseline - PRUNE_MARGIN) {
+                        candidate.pruned = true;
+                        return false;
+                    }
+                    return true;
+                });
+
+        if (eval != null) {
+            candidate.accuracy = eval.pctCorrect();
+            candidate.auc = RocCurve.fromPredictions(eval.predictions(), posIndex).auc();
+        } else {
+            candidate.pruned = true;
+        }
+        return candidate;
+    }
+}
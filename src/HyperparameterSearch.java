@@ -0,0 +1,314 @@
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Grid or random search over a fixed search space per classifier, with successive
+ * halving. Every configuration first runs on a small subsample with 3-fold
+ * cross-validation. Only the best third of each classifier's trials moves to the
+ * next rung, which uses three times as many rows. The last rung is the full
+ * balanced sample with the usual 10 folds and seed, so its scores match the
+ * classifier buttons. The subsamples are nested prefixes of one shuffled copy of
+ * the sample rows.
+ *
+ * All trials of a rung, across classifiers, run at once on a worker pool. Each rung's
+ * data is projected once and shared read-only by its trials.
+ *
+ * A configuration is a Weka option string (e.g. "-I 200 -K 2 -depth 10") or, for
+ * k-NN, a KnnSettings spec. The best ones are saved as a properties file,
+ * ~/.bird-predictor/tuning.properties by default (-Dbird.tuning.file), which the
+ * window and BatchRunner --tuned apply through PredictionPipeline.applyTuning().
+ */
+public class HyperparameterSearch {
+
+    private static final int ETA = 3;
+    private static final int EARLY_FOLDS = 3;
+    private static final int MIN_RUNG_ROWS = 120;
+
+    private static final Map<String, String[][]> SEARCH_SPACES = new LinkedHashMap<>();
+
+    static {
+        SEARCH_SPACES.put("Random Forest", new String[][]{
+                {"-I 50", "-I 100", "-I 200"},
+                {"-K 0", "-K 1", "-K 2"},
+                {"-depth 0", "-depth 5", "-depth 10"}});
+        SEARCH_SPACES.put("J48 (Decision Tree)", new String[][]{
+                {"-C 0.05", "-C 0.1", "-C 0.25", "-C 0.5"},
+                {"-M 1", "-M 2", "-M 5", "-M 10"}});
+        SEARCH_SPACES.put("Logistic Regression", new String[][]{
+                {"-R 1e-8", "-R 1e-4", "-R 0.01", "-R 0.1", "-R 1", "-R 10"}});
+        SEARCH_SPACES.put("SMO (SVM)", new String[][]{
+                {"-C 0.1", "-C 1", "-C 10", "-C 100"},
+                {"-K \"weka.classifiers.functions.supportVector.PolyKernel -E 1\"",
+                        "-K \"weka.classifiers.functions.supportVector.PolyKernel -E 2\"",
+                        "-K \"weka.classifiers.functions.supportVector.RBFKernel -G 0.01\"",
+                        "-K \"weka.classifiers.functions.supportVector.RBFKernel -G 0.1\"",
+                        "-K \"weka.classifiers.functions.supportVector.RBFKernel -G 1\""}});
+        SEARCH_SPACES.put("Naive Bayes", new String[][]{
+                {"", "-K"}});
+        SEARCH_SPACES.put(PredictionPipeline.KNN_NAME, new String[][]{
+                {"k=1", "k=3", "k=5", "k=7", "k=11", "k=15", "k=21"},
+                {"distance=euclidean", "distance=manhattan", "distance=chebyshev"}});
+    }
+
+    public enum Mode {
+        GRID, RANDOM
+    }
+
+    public static class Trial {
+        public final String classifierName;
+        public final String configuration;
+        public int rung;
+        public int rows;
+        public int folds;
+        public double accuracy = Double.NaN;
+        public double auc = Double.NaN;
+        public long millis;
+        public boolean promoted;
+        public boolean best;
+        public String error;
+
+        Trial(String classifierName, String configuration) {
+            this.classifierName = classifierName;
+            this.configuration = configuration;
+        }
+
+        Trial copyForRung(int rung, int rows, int folds) {
+            Trial next = new Trial(classifierName, configuration);
+            next.rung = rung;
+            next.rows = rows;
+            next.folds = folds;
+            return next;
+        }
+    }
+
+    public interface Listener {
+        void trialCompleted(Trial trial);
+
+        boolean isCancelled();
+    }
+
+    private final PredictionPipeline pipeline;
+    private final int parallelism;
+    private final long seed;
+
+    public HyperparameterSearch(PredictionPipeline pipeline, int parallelism, long seed) {
+        this.pipeline = pipeline;
+        this.parallelism = Math.max(1, parallelism);
+        this.seed = seed;
+    }
+
+    public static boolean hasSearchSpace(String classifierName) {
+        return SEARCH_SPACES.containsKey(classifierName);
+    }
+
+    /**
+     * The configurations to try: the whole grid, or in RANDOM mode at most
+     * maxTrials of them drawn without replacement.
+     */
+    public List<String> configurations(String classifierName, Mode mode, int maxTrials) {
+        String[][] space = SEARCH_SPACES.get(classifierName);
+        List<String> configurations = new ArrayList<>();
+        int combinations = 1;
+        for (String[] values : space) {
+            combinations *= values.length;
+        }
+        String separator = PredictionPipeline.KNN_NAME.equals(classifierName) ? "," : " ";
+        for (int index = 0; index < combinations; index++) {
+            List<String> parts = new ArrayList<>();
+            int rest = index;
+            for (String[] values : space) {
+                String value = values[rest % values.length];
+                rest /= values.length;
+                if (!value.isEmpty()) {
+                    parts.add(value);
+                }
+            }
+            configurations.add(String.join(separator, parts));
+        }
+        if (mode == Mode.RANDOM && maxTrials < configurations.size()) {
+            Collections.shuffle(configurations, new Random(seed));
+            configurations = new ArrayList<>(configurations.subList(0, maxTrials));
+        }
+        return configurations;
+    }
+
+    /**
+     * Runs successive halving for each classifier over the given features and returns
+     * every trial, with the winner of each classifier marked best. Returns null if
+     * cancelled.
+     */
+    public List<Trial> search(ColumnStore store, ClassBalancer.Sample sample, List<String> features,
+                              List<String> classifierNames, Mode mode, int maxTrials, Listener listener)
+            throws Exception {
+        int posIndex = store.classAttribute().indexOfValue("Migratory");
+        Map<String, List<Trial>> alive = new LinkedHashMap<>();
+        int maxConfigurations = 1;
+        for (String name : classifierNames) {
+            List<Trial> trials = new ArrayList<>();
+            for (String configuration : configurations(name, mode, maxTrials)) {
+                trials.add(new Trial(name, configuration));
+            }
+            alive.put(name, trials);
+            maxConfigurations = Math.max(maxConfigurations, trials.size());
+        }
+
+        int[] shuffled = sample.rows.clone();
+        Random random = new Random(seed);
+        for (int i = shuffled.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = swap;
+        }
+
+        // Enough rungs to cut the largest field down to one, as long as the first rung
+        // keeps MIN_RUNG_ROWS rows.
+        int rungs = 1;
+        while (Math.pow(ETA, rungs) <= maxConfigurations && shuffled.length / Math.pow(ETA, rungs) >= MIN_RUNG_ROWS) {
+            rungs++;
+        }
+
+        CrossValidationEngine engine = new CrossValidationEngine(1);
+        engine.setMetrics(pipeline.metrics());
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        List<Trial> all = new ArrayList<>();
+        try {
+            for (int rung = 0; rung < rungs; rung++) {
+                boolean last = rung == rungs - 1;
+                int rows = last ? shuffled.length : (int) (shuffled.length / Math.pow(ETA, rungs - 1 - rung));
+                int folds = last ? PredictionPipeline.CV_FOLDS : EARLY_FOLDS;
+                long cvSeed = last ? PredictionPipeline.CV_SEED : seed;
+                Instances data = last ? pipeline.projectFeatures(store, features, sample)
+                        : store.project(features, Arrays.copyOf(shuffled, rows), sample.classWeights);
+
+                // A classifier down to one configuration skips straight to the last rung.
+                List<Trial> rungTrials = new ArrayList<>();
+                for (List<Trial> trials : alive.values()) {
+                    if (last || trials.size() > 1) {
+                        for (Trial trial : trials) {
+                            rungTrials.add(trial.copyForRung(rung, rows, folds));
+                        }
+                    }
+                }
+
+                CompletionService<Trial> completion = new ExecutorCompletionService<>(executor);
+                for (Trial trial : rungTrials) {
+                    completion.submit(() -> run(engine, trial, data, cvSeed, posIndex, listener));
+                }
+                for (int i = 0; i < rungTrials.size(); i++) {
+                    Trial trial = completion.take().get();
+                    if (listener.isCancelled()) {
+                        return null;
+                    }
+                    all.add(trial);
+                    listener.trialCompleted(trial);
+                }
+
+                for (Map.Entry<String, List<Trial>> entry : alive.entrySet()) {
+                    if (!last && entry.getValue().size() <= 1) {
+                        continue;
+                    }
+                    List<Trial> ranked = new ArrayList<>();
+                    for (Trial trial : rungTrials) {
+                        if (trial.classifierName.equals(entry.getKey()) && trial.error == null) {
+                            ranked.add(trial);
+                        }
+                    }
+                    ranked.sort((t1, t2) -> t1.accuracy != t2.accuracy
+                            ? Double.compare(t2.accuracy, t1.accuracy) : Double.compare(t2.auc, t1.auc));
+                    int keep = last ? Math.min(1, ranked.size()) : (ranked.size() + ETA - 1) / ETA;
+                    List<Trial> promoted = new ArrayList<>(ranked.subList(0, keep));
+                    for (Trial trial : promoted) {
+                        if (last) {
+                            trial.best = true;
+                        } else {
+                            trial.promoted = true;
+                        }
+                    }
+                    entry.setValue(promoted);
+                }
+            }
+            return all;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Trial run(CrossValidationEngine engine, Trial trial, Instances data, long cvSeed, int posIndex,
+                      Listener listener) {
+        long start = System.nanoTime();
+        try {
+            Classifier classifier = pipeline.newClassifier(trial.classifierName, trial.configuration);
+            Evaluation eval = engine.crossValidate(classifier, data, trial.folds, new Random(cvSeed),
+                    (completed, numFolds, foldEval) -> !listener.isCancelled());
+            if (eval != null) {
+                trial.accuracy = eval.pctCorrect();
+                trial.auc = RocCurve.fromPredictions(eval.predictions(), posIndex).auc();
+            }
+        } catch (Exception ex) {
+            trial.error = ex.getMessage() != null ? ex.getMessage() : ex.toString();
+        }
+        trial.millis = (System.nanoTime() - start) / 1_000_000;
+        return trial;
+    }
+
+    public static File defaultTuningFile() {
+        return new File(System.getProperty("bird.tuning.file", System.getProperty("user.home")
+                + File.separator + ".bird-predictor" + File.separator + "tuning.properties"));
+    }
+
+    /**
+     * Adds the best configuration of each classifier to the file, keeping the entries
+     * of classifiers that were not tuned this time.
+     */
+    public static void saveBest(File file, List<Trial> trials) throws IOException {
+        Map<String, String> tuning = loadTuning(file);
+        for (Trial trial : trials) {
+            if (trial.best) {
+                tuning.put(trial.classifierName, trial.configuration);
+            }
+        }
+        Properties properties = new Properties();
+        properties.putAll(tuning);
+        if (file.getParentFile() != null) {
+            Files.createDirectories(file.getParentFile().toPath());
+        }
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            properties.store(out, "Best configurations found by HyperparameterSearch");
+        }
+    }
+
+    public static Map<String, String> loadTuning(File file) throws IOException {
+        Map<String, String> tuning = new LinkedHashMap<>();
+        if (!file.isFile()) {
+            return tuning;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            properties.load(in);
+        }
+        for (String name : properties.stringPropertyNames()) {
+            tuning.put(name, properties.getProperty(name));
+        }
+        return tuning;
+    }
+}
@@ -0,0 +1,521 @@
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.UpdateableClassifier;
+import weka.core.Capabilities;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * k-nearest-neighbour classifier backed by a KD-tree over primitive arrays. It
+ * predicts like IBk without distance weighting: features are normalized to [0, 1]
+ * by their training range, every neighbour tied with the k-th one is counted, and
+ * missing values use Weka's distance conventions. Queries cost about O(log n)
+ * instead of IBk's linear scan.
+ *
+ * Rows with a missing feature value, and rows added with updateClassifier() since
+ * the last build, are scanned linearly next to the tree. The tree is rebuilt once
+ * that list grows past a quarter of the tree. Normalization ranges are fixed at
+ * build time.
+ */
+public class KdTreeKnn extends AbstractClassifier implements UpdateableClassifier {
+
+    private static final long serialVersionUID = 2L;
+    private static final int LEAF_SIZE = 16;
+    private static final int MIN_REBUILD_ROWS = 1024;
+
+    public enum Distance {
+        EUCLIDEAN, MANHATTAN, CHEBYSHEV
+    }
+
+    private final int k;
+    private final Distance distance;
+    private final boolean normalize;
+
+    private Instances header;
+    private int dims;
+    private int[] featureIndex;
+    private boolean[] nominal;
+    private double[] min;
+    private double[] width;
+    // Training range of each feature, which raw-value distances use for missing values.
+    private double[] rangeMin;
+    private double[] rangeMax;
+
+    // Normalized rows, row-major: coords[row * dims + d]. Missing values are NaN.
+    private double[] coords = new double[0];
+    private int[] classOf = new int[0];
+    private double[] weightOf = new double[0];
+    private int numRows;
+    private int numLabelled;
+
+    // Tree nodes cover order[nodeStart, nodeEnd); leaves have nodeLeft == -1.
+    private int[] order;
+    private int[] nodeStart;
+    private int[] nodeEnd;
+    private int[] nodeLeft;
+    private int[] nodeRight;
+    private double[] boxMin;
+    private double[] boxMax;
+    private int numNodes;
+
+    private int[] linearRows = new int[0];
+    private int numLinear;
+    private int numLinearAtBuild;
+
+    public KdTreeKnn(int k, Distance distance, boolean normalize) {
+        this.k = Math.max(1, k);
+        this.distance = distance;
+        this.normalize = normalize;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public Distance getDistance() {
+        return distance;
+    }
+
+    public boolean getNormalize() {
+        return normalize;
+    }
+
+    @Override
+    public Capabilities getCapabilities() {
+        Capabilities result = super.getCapabilities();
+        result.disableAll();
+        result.enable(Capabilities.Capability.NUMERIC_ATTRIBUTES);
+        result.enable(Capabilities.Capability.NOMINAL_ATTRIBUTES);
+        result.enable(Capabilities.Capability.DATE_ATTRIBUTES);
+        result.enable(Capabilities.Capability.MISSING_VALUES);
+        result.enable(Capabilities.Capability.NOMINAL_CLASS);
+        result.enable(Capabilities.Capability.BINARY_CLASS);
+        result.enable(Capabilities.Capability.MISSING_CLASS_VALUES);
+        result.setMinimumNumberInstances(0);
+        return result;
+    }
+
+    @Override
+    public void buildClassifier(Instances data) throws Exception {
+        getCapabilities().testWithFail(data);
+        header = new Instances(data, 0);
+
+        dims = data.numAttributes() - 1;
+        featureIndex = new int[dims];
+        nominal = new boolean[dims];
+        for (int a = 0, d = 0; a < data.numAttributes(); a++) {
+            if (a != data.classIndex()) {
+                featureIndex[d] = a;
+                nominal[d++] = data.attribute(a).isNominal();
+            }
+        }
+
+        int n = data.numInstances();
+        min = new double[dims];
+        width = new double[dims];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        double[] max = new double[dims];
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        for (int row = 0; row < n; row++) {
+            Instance instance = data.instance(row);
+            if (instance.classIsMissing()) {
+                continue;
+            }
+            for (int d = 0; d < dims; d++) {
+                double value = instance.value(featureIndex[d]);
+                if (!Double.isNaN(value)) {
+                    min[d] = Math.min(min[d], value);
+                    max[d] = Math.max(max[d], value);
+                }
+            }
+        }
+        rangeMin = new double[dims];
+        rangeMax = new double[dims];
+        for (int d = 0; d < dims; d++) {
+            if (max[d] >= min[d]) {
+                rangeMin[d] = min[d];
+                rangeMax[d] = max[d];
+            }
+            if (!normalize || nominal[d]) {
+                min[d] = 0;
+                width[d] = 1;
+            } else {
+                // Like Weka, a constant or all-missing feature normalizes to 0.
+                width[d] = max[d] > min[d] ? max[d] - min[d] : 0;
+            }
+        }
+
+        coords = new double[n * dims];
+        classOf = new int[n];
+        weightOf = new double[n];
+        numRows = 0;
+        numLabelled = 0;
+        order = null;
+        numLinear = 0;
+        for (int row = 0; row < n; row++) {
+            addRow(data.instance(row));
+        }
+        buildTree();
+    }
+
+    @Override
+    public void updateClassifier(Instance instance) throws Exception {
+        if (header == null) {
+            throw new Exception("No model built yet.");
+        }
+        addRow(instance);
+        if (numLinear - numLinearAtBuild > Math.max(MIN_REBUILD_ROWS, order.length / 4)) {
+            buildTree();
+        }
+    }
+
+    /**
+     * Safe to call from several threads at once, but not during updateClassifier().
+     */
+    @Override
+    public double[] distributionForInstance(Instance instance) throws Exception {
+        if (header == null) {
+            throw new Exception("No model built yet.");
+        }
+        double[] query = new double[dims];
+        for (int d = 0; d < dims; d++) {
+            double value = instance.value(featureIndex[d]);
+            query[d] = nominal[d] || Double.isNaN(value) ? value : width[d] > 0 ? (value - min[d]) / width[d] : 0;
+        }
+
+        Neighbours neighbours = new Neighbours(k);
+        if (numNodes > 0) {
+            search(0, query, neighbours);
+        }
+        for (int i = 0; i < numLinear; i++) {
+            int row = linearRows[i];
+            neighbours.offer(distance(query, row), row);
+        }
+
+        int numClasses = header.numClasses();
+        double[] distribution = new double[numClasses];
+        double prior = 1.0 / Math.max(1, numLabelled);
+        Arrays.fill(distribution, prior);
+        double total = numClasses * prior;
+        for (int i = 0; i < neighbours.size; i++) {
+            int row = neighbours.rows[i];
+            distribution[classOf[row]] += weightOf[row];
+            total += weightOf[row];
+        }
+        for (int c = 0; c < numClasses; c++) {
+            distribution[c] /= total;
+        }
+        return distribution;
+    }
+
+    private void addRow(Instance instance) {
+        if (numRows == classOf.length) {
+            int capacity = Math.max(16, numRows * 3 / 2);
+            coords = Arrays.copyOf(coords, capacity * dims);
+            classOf = Arrays.copyOf(classOf, capacity);
+            weightOf = Arrays.copyOf(weightOf, capacity);
+        }
+        int row = numRows++;
+        boolean complete = true;
+        for (int d = 0; d < dims; d++) {
+            double value = instance.value(featureIndex[d]);
+            if (Double.isNaN(value)) {
+                complete = false;
+            } else if (!nominal[d]) {
+                value = width[d] > 0 ? (value - min[d]) / width[d] : 0;
+            }
+            coords[row * dims + d] = value;
+        }
+        weightOf[row] = instance.weight();
+        if (instance.classIsMissing()) {
+            classOf[row] = -1;
+            return;
+        }
+        classOf[row] = (int) instance.classValue();
+        numLabelled++;
+        addLinear(row);
+    }
+
+    private void addLinear(int row) {
+        if (numLinear == linearRows.length) {
+            linearRows = Arrays.copyOf(linearRows, Math.max(16, numLinear * 2));
+        }
+        linearRows[numLinear++] = row;
+    }
+
+    /**
+     * Moves every labelled row without missing values into a new tree; the rest
+     * stay in the linear list.
+     */
+    private void buildTree() {
+        int[] pending = Arrays.copyOf(linearRows, numLinear);
+        if (order != null) {
+            int[] all = Arrays.copyOf(order, order.length + pending.length);
+            System.arraycopy(pending, 0, all, order.length, pending.length);
+            pending = all;
+        }
+
+        int treeRows = 0;
+        numLinear = 0;
+        int[] treeOrder = new int[pending.length];
+        for (int row : pending) {
+            if (isComplete(row)) {
+                treeOrder[treeRows++] = row;
+            } else {
+                addLinear(row);
+            }
+        }
+        order = Arrays.copyOf(treeOrder, treeRows);
+
+        int capacity = 2 * (treeRows / (LEAF_SIZE / 2) + 1);
+        nodeStart = new int[capacity];
+        nodeEnd = new int[capacity];
+        nodeLeft = new int[capacity];
+        nodeRight = new int[capacity];
+        boxMin = new double[capacity * dims];
+        boxMax = new double[capacity * dims];
+        numNodes = 0;
+        if (treeRows > 0) {
+            buildNode(0, treeRows);
+        }
+        numLinearAtBuild = numLinear;
+    }
+
+    private boolean isComplete(int row) {
+        for (int d = 0; d < dims; d++) {
+            if (Double.isNaN(coords[row * dims + d])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int buildNode(int start, int end) {
+        int node = numNodes++;
+        nodeStart[node] = start;
+        nodeEnd[node] = end;
+        nodeLeft[node] = -1;
+        nodeRight[node] = -1;
+
+        int box = node * dims;
+        Arrays.fill(boxMin, box, box + dims, Double.POSITIVE_INFINITY);
+        Arrays.fill(boxMax, box, box + dims, Double.NEGATIVE_INFINITY);
+        for (int i = start; i < end; i++) {
+            int offset = order[i] * dims;
+            for (int d = 0; d < dims; d++) {
+                double value = coords[offset + d];
+                boxMin[box + d] = Math.min(boxMin[box + d], value);
+                boxMax[box + d] = Math.max(boxMax[box + d], value);
+            }
+        }
+        if (end - start <= LEAF_SIZE) {
+            return node;
+        }
+
+        int splitDim = -1;
+        double widest = 0;
+        for (int d = 0; d < dims; d++) {
+            double extent = boxMax[box + d] - boxMin[box + d];
+            if (extent > widest) {
+                widest = extent;
+                splitDim = d;
+            }
+        }
+        if (splitDim < 0) {
+            return node;
+        }
+
+        int mid = (start + end) >>> 1;
+        select(start, end - 1, mid, splitDim);
+        int left = buildNode(start, mid);
+        int right = buildNode(mid, end);
+        nodeLeft[node] = left;
+        nodeRight[node] = right;
+        return node;
+    }
+
+    /**
+     * Reorders order[lo..hi] so that position nth holds the row a sort by dimension
+     * d would put there, with no larger value before it and no smaller one after.
+     */
+    private void select(int lo, int hi, int nth, int d) {
+        while (hi > lo) {
+            double pivot = coords[order[(lo + hi) >>> 1] * dims + d];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (coords[order[i] * dims + d] < pivot) {
+                    i++;
+                }
+                while (coords[order[j] * dims + d] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i++] = order[j];
+                    order[j--] = swap;
+                }
+            }
+            if (nth <= j) {
+                hi = j;
+            } else if (nth >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void search(int node, double[] query, Neighbours neighbours) {
+        if (nodeLeft[node] < 0) {
+            for (int i = nodeStart[node]; i < nodeEnd[node]; i++) {
+                int row = order[i];
+                neighbours.offer(distance(query, row), row);
+            }
+            return;
+        }
+
+        int near = nodeLeft[node];
+        int far = nodeRight[node];
+        double nearBound = boxDistance(near, query);
+        double farBound = boxDistance(far, query);
+        if (farBound < nearBound) {
+            int swap = near;
+            near = far;
+            far = swap;
+            double swapBound = nearBound;
+            nearBound = farBound;
+            farBound = swapBound;
+        }
+        // Ties with the k-th neighbour are kept, so only strictly farther boxes are pruned.
+        if (nearBound <= neighbours.bound()) {
+            search(near, query, neighbours);
+        }
+        if (farBound <= neighbours.bound()) {
+            search(far, query, neighbours);
+        }
+    }
+
+    /**
+     * Lower bound on the distance from the query to any row in the node's box.
+     */
+    private double boxDistance(int node, double[] query) {
+        int box = node * dims;
+        double result = 0;
+        for (int d = 0; d < dims; d++) {
+            double q = query[d];
+            double gap;
+            if (Double.isNaN(q)) {
+                gap = 0;
+            } else if (nominal[d]) {
+                gap = q < boxMin[box + d] || q > boxMax[box + d] ? 1 : 0;
+            } else {
+                gap = q < boxMin[box + d] ? boxMin[box + d] - q : q > boxMax[box + d] ? q - boxMax[box + d] : 0;
+            }
+            result = accumulate(result, gap);
+        }
+        return result;
+    }
+
+    /**
+     * Distance in the metric's accumulated form (no square root for Euclidean), which
+     * orders rows the same way.
+     */
+    private double distance(double[] query, int row) {
+        int offset = row * dims;
+        double result = 0;
+        for (int d = 0; d < dims; d++) {
+            result = accumulate(result, difference(d, query[d], coords[offset + d]));
+        }
+        return result;
+    }
+
+    private double difference(int d, double q, double v) {
+        boolean qMissing = Double.isNaN(q);
+        boolean vMissing = Double.isNaN(v);
+        if (nominal[d]) {
+            return qMissing || vMissing || q != v ? 1 : 0;
+        }
+        if (qMissing || vMissing) {
+            if (!normalize) {
+                // As in Weka without normalization: the largest difference the range allows.
+                if (qMissing && vMissing) {
+                    return rangeMax[d] - rangeMin[d];
+                }
+                double present = qMissing ? v : q;
+                return Math.max(rangeMax[d] - present, present - rangeMin[d]);
+            }
+            if (qMissing && vMissing) {
+                return 1;
+            }
+            double present = qMissing ? v : q;
+            return present < 0.5 ? 1 - present : present;
+        }
+        return q - v;
+    }
+
+    private double accumulate(double sum, double difference) {
+        switch (distance) {
+            case MANHATTAN:
+                return sum + Math.abs(difference);
+            case CHEBYSHEV:
+                return Math.max(sum, Math.abs(difference));
+            default:
+                return sum + difference * difference;
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (header == null) {
+            return "KD-tree k-NN: no model built yet.";
+        }
+        return String.format(Locale.ROOT, "KD-tree k-NN (k=%d, %s distance, %s)%n%d rows, %d tree nodes, %d scanned linearly",
+                k, distance.name().toLowerCase(Locale.ROOT), normalize ? "normalized" : "raw values",
+                numLabelled, numNodes, numLinear);
+    }
+
+    /**
+     * The k nearest rows found so far, sorted by distance, plus any rows tied with
+     * the k-th.
+     */
+    private static class Neighbours {
+        private final int k;
+        private double[] distances;
+        private int[] rows;
+        private int size;
+
+        Neighbours(int k) {
+            this.k = k;
+            this.distances = new double[k + 1];
+            this.rows = new int[k + 1];
+        }
+
+        double bound() {
+            return size >= k ? distances[k - 1] : Double.POSITIVE_INFINITY;
+        }
+
+        void offer(double distance, int row) {
+            if (size >= k && distance > distances[k - 1]) {
+                return;
+            }
+            if (size == rows.length) {
+                distances = Arrays.copyOf(distances, size * 2);
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            int i = size++;
+            while (i > 0 && distances[i - 1] > distance) {
+                distances[i] = distances[i - 1];
+                rows[i] = rows[i - 1];
+                i--;
+            }
+            distances[i] = distance;
+            rows[i] = row;
+            while (size > k && distances[size - 1] > distances[k - 1]) {
+                size--;
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+import weka.classifiers.Classifier;
+import weka.classifiers.lazy.IBk;
+import weka.core.ChebyshevDistance;
+import weka.core.EuclideanDistance;
+import weka.core.ManhattanDistance;
+import weka.core.NormalizableDistance;
+import weka.core.neighboursearch.LinearNNSearch;
+
+import java.util.Locale;
+
+/**
+ * How "IBk (k-NN)" is configured: number of neighbours, distance, feature
+ * normalization, and whether neighbours are found with a KD-tree (KdTreeKnn) or
+ * IBk's linear search. The default matches IBk's own defaults on a KD-tree.
+ */
+public class KnnSettings {
+
+    public enum Search {
+        KDTREE, LINEAR
+    }
+
+    public static final KnnSettings DEFAULT = new KnnSettings(1, KdTreeKnn.Distance.EUCLIDEAN, true, Search.KDTREE);
+
+    public final int k;
+    public final KdTreeKnn.Distance distance;
+    public final boolean normalize;
+    public final Search search;
+
+    public KnnSettings(int k, KdTreeKnn.Distance distance, boolean normalize, Search search) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1.");
+        }
+        this.k = k;
+        this.distance = distance;
+        this.normalize = normalize;
+        this.search = search;
+    }
+
+    /**
+     * Parses "k=5,distance=manhattan,normalize=false,search=linear"; keys left out keep
+     * their defaults.
+     */
+    public static KnnSettings parse(String spec) {
+        int k = DEFAULT.k;
+        KdTreeKnn.Distance distance = DEFAULT.distance;
+        boolean normalize = DEFAULT.normalize;
+        Search search = DEFAULT.search;
+        for (String part : spec.split(",")) {
+            String[] keyValue = part.split("=", 2);
+            if (keyValue.length != 2) {
+                throw new IllegalArgumentException("Expected key=value in k-NN settings: " + part);
+            }
+            String key = keyValue[0].trim().toLowerCase(Locale.ROOT);
+            String value = keyValue[1].trim().toUpperCase(Locale.ROOT).replace("-", "");
+            if (key.equals("k")) {
+                try {
+                    k = Integer.parseInt(value);
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("Invalid k-NN setting: " + part);
+                }
+            } else if (key.equals("distance")) {
+                distance = valueOf(KdTreeKnn.Distance.class, value, part);
+            } else if (key.equals("normalize")) {
+                normalize = Boolean.parseBoolean(value);
+            } else if (key.equals("search")) {
+                search = valueOf(Search.class, value, part);
+            } else {
+                throw new IllegalArgumentException("Unknown k-NN setting: " + part);
+            }
+        }
+        return new KnnSettings(k, distance, normalize, search);
+    }
+
+    private static <E extends Enum<E>> E valueOf(Class<E> type, String value, String part) {
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().equals(value)) {
+                return constant;
+            }
+        }
+        throw new IllegalArgumentException("Invalid k-NN setting: " + part);
+    }
+
+    public Classifier newClassifier() throws Exception {
+        if (search == Search.KDTREE) {
+            return new KdTreeKnn(k, distance, normalize);
+        }
+
+        NormalizableDistance distanceFunction;
+        switch (distance) {
+            case MANHATTAN:
+                distanceFunction = new ManhattanDistance();
+                break;
+            case CHEBYSHEV:
+                distanceFunction = new ChebyshevDistance();
+                break;
+            default:
+                distanceFunction = new EuclideanDistance();
+        }
+        distanceFunction.setDontNormalize(!normalize);
+        LinearNNSearch linearSearch = new LinearNNSearch();
+        linearSearch.setDistanceFunction(distanceFunction);
+        IBk ibk = new IBk(k);
+        ibk.setNearestNeighbourSearchAlgorithm(linearSearch);
+        return ibk;
+    }
+
+    @Override
+    public String toString() {
+        return "k=" + k + ", " + distance.name().toLowerCase(Locale.ROOT) + ", "
+                + (normalize ? "normalized" : "raw values") + ", " + (search == Search.KDTREE ? "kd-tree" : "linear");
+    }
+}
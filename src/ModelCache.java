@@ -0,0 +1,272 @@
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU cache of trained models with their cross-validation results and ROC points,
+ * keyed by dataset fingerprint, features, classifier, seed and class balancing. The
+ * in-memory layer is bounded by the serialized size of its entries
+ * (-Dbird.modelCache.maxBytes, 256 MB by default). Setting -Dbird.modelCache.dir adds
+ * an on-disk layer of serialized entries that survives restarts.
+ */
+public class ModelCache {
+
+    public static class Entry implements Serializable {
+        private static final long serialVersionUID = 2L;
+
+        public final Classifier model;
+        public final Evaluation eval;
+        public final double[][] rocPoints;
+        public final double auc;
+
+        public Entry(Classifier model, Evaluation eval, double[][] rocPoints, double auc) {
+            this.model = model;
+            this.eval = eval;
+            this.rocPoints = rocPoints;
+            this.auc = auc;
+        }
+    }
+
+    private final long maxBytes;
+    private final Path directory;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> entrySizes = new LinkedHashMap<>();
+    private long totalBytes;
+    private long hits;
+    private long misses;
+
+    public ModelCache() {
+        this(Long.getLong("bird.modelCache.maxBytes", 256L << 20),
+                System.getProperty("bird.modelCache.dir") != null
+                        ? new File(System.getProperty("bird.modelCache.dir")).toPath() : null);
+    }
+
+    public ModelCache(long maxBytes, Path directory) {
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+    }
+
+    public static String key(ColumnStore store, List<String> features, String classifierName,
+                             int numFolds, long seed, ClassBalancer.Mode balanceMode) {
+        return store.fingerprint() + "|" + String.join(",", features) + "|" + classifierName
+                + "|folds=" + numFolds + "|seed=" + seed + "|balance=" + balanceMode;
+    }
+
+    /**
+     * Looks the entry up in memory, then on disk. Disk reads happen outside the lock,
+     * so other threads can use the in-memory layer meanwhile.
+     */
+    public Entry get(String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null && directory != null) {
+            Path path = diskPath(key);
+            Entry loaded = readFromDisk(key, path);
+            if (loaded != null) {
+                long size;
+                try {
+                    size = Files.size(path);
+                } catch (IOException ex) {
+                    size = serializedSize(loaded);
+                }
+                synchronized (this) {
+                    // A put() that finished while the file was read wins over the file.
+                    entry = entries.get(key);
+                    if (entry == null) {
+                        entry = loaded;
+                        putInMemory(key, entry, size);
+                    }
+                }
+            }
+        }
+
+        synchronized (this) {
+            if (entry != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Stores the entry. With a disk layer the entry is serialized once, into the file,
+     * and the file size is its in-memory size.
+     */
+    public void put(String key, Entry entry) {
+        long size = -1;
+        if (directory != null) {
+            size = writeToDisk(key, entry);
+        }
+        if (size < 0) {
+            size = serializedSize(entry);
+        }
+        synchronized (this) {
+            putInMemory(key, entry, size);
+        }
+    }
+
+    public synchronized String statistics() {
+        return String.format("Model cache: %d hits, %d misses, %d entries, %.1f of %.1f MB",
+                hits, misses, entries.size(), totalBytes / 1e6, maxBytes / 1e6);
+    }
+
+    private void putInMemory(String key, Entry entry, long size) {
+        Long previous = entrySizes.remove(key);
+        if (previous != null) {
+            totalBytes -= previous;
+        }
+        entries.put(key, entry);
+        entrySizes.put(key, size);
+        totalBytes += size;
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            String eldestKey = eldest.next().getKey();
+            if (eldestKey.equals(key)) {
+                continue;
+            }
+            eldest.remove();
+            totalBytes -= entrySizes.remove(eldestKey);
+        }
+    }
+
+    private Entry readFromDisk(String key, Path path) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (!key.equals(in.readUTF())) {
+                return null;
+            }
+            return (Entry) in.readObject();
+        } catch (Exception ex) {
+            System.err.println("Ignoring unreadable model cache entry " + path + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the entry and returns the number of bytes written, or -1 if it failed.
+     * The entry goes to a temp file that is moved into place, and deleted on failure.
+     */
+    private long writeToDisk(String key, Entry entry) {
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, "model", ".tmp");
+            CountingOutputStream counter = new CountingOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp)));
+            try (ObjectOutputStream out = new ObjectOutputStream(counter)) {
+                out.writeUTF(key);
+                out.writeObject(entry);
+            }
+            Path target = diskPath(key);
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+            return counter.count;
+        } catch (IOException ex) {
+            System.err.println("Could not write the model cache: " + ex.getMessage());
+            return -1;
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ex) {
+                    System.err.println("Could not delete " + temp + ": " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private Path diskPath(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : hash) {
+                name.append(String.format("%02x", b));
+            }
+            return directory.resolve(name + ".model");
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Measures an entry by serializing it into a counting sink; nothing is buffered.
+     */
+    private static long serializedSize(Entry entry) {
+        CountingOutputStream counter = new CountingOutputStream(null);
+        try (ObjectOutputStream out = new ObjectOutputStream(counter)) {
+            out.writeObject(entry);
+        } catch (IOException ex) {
+            return Long.MAX_VALUE / 4;
+        }
+        return counter.count;
+    }
+
+    // Counts the bytes passed on to target, or discards them if target is null.
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream target;
+        long count;
+
+        CountingOutputStream(OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (target != null) {
+                target.write(b);
+            }
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (target != null) {
+                target.write(b, off, len);
+            }
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (target != null) {
+                target.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (target != null) {
+                target.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,275 @@
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Times each stage of the pipeline on its own: CSV load, feature projection, class
+ * balancing, 10-fold cross-validation per classifier and ROC computation. Datasets
+ * are synthetic and scaled from the bundled bird-diversity CSV: rows are drawn from
+ * it with replacement and their numeric values jittered by 5%. The size of the source
+ * itself (387 rows for the bundled CSV) copies it unchanged. Generated files are kept
+ * in the temp directory and reused, keyed by the source's fingerprint and the size.
+ *
+ * Every stage gets warmup iterations and then measured iterations. The report gives
+ * the mean and best time per operation, throughput, and the bytes allocated per
+ * operation summed over all threads, so pool threads used by cross-validation count.
+ *
+ * The default sizes stop at 100,000 rows. The full range up to 10 million rows is
+ * opt-in through --rows, e.g. --rows 387,100000,1000000,10000000, and needs a large
+ * heap (-Xmx8g).
+ *
+ * Usage:
+ *   java -cp build;lib/* PipelineBenchmark [--source "data/bird-diversity (1).csv"]
+ *        [--rows 387,10000,100000] [--stages load,project,balance,cv,roc]
+ *        [--classifiers rf,j48,logistic,smo,nb,ibk] [--warmup 2] [--iterations 5] [--csv report.csv]
+ *        [--knn k=1,search=kdtree|linear]
+ */
+public class PipelineBenchmark {
+
+    private static final List<String> FEATURES = Arrays.asList("Latitude", "Body mass");
+
+    private File source = new File("data/bird-diversity (1).csv");
+    private int[] sizes = {387, 10_000, 100_000};
+    private List<String> stages = Arrays.asList("load", "project", "balance", "cv", "roc");
+    private List<String> classifiers = Arrays.asList(PredictionPipeline.CLASSIFIER_NAMES);
+    private int warmup = 2;
+    private int iterations = 5;
+    private File csvReport;
+
+    private final PredictionPipeline pipeline = new PredictionPipeline(new CrossValidationEngine());
+    private final List<String> reportRows = new ArrayList<>();
+
+    private interface Stage {
+        /** Runs one operation and returns how many bytes it processed, or 0. */
+        long run() throws Exception;
+    }
+
+    public static void main(String[] args) {
+        PipelineBenchmark benchmark = new PipelineBenchmark();
+        try {
+            benchmark.parseArguments(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println("Usage: PipelineBenchmark [--source file.csv] [--rows 387,10000,100000 (up to 10000000)]"
+                    + " [--stages load,project,balance,cv,roc] [--classifiers rf,j48,logistic,smo,nb,ibk]"
+                    + " [--warmup 2] [--iterations 5] [--csv report.csv] [--knn k=1,search=kdtree|linear]");
+            System.exit(2);
+        }
+
+        try {
+            benchmark.run();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--source":
+                    source = new File(value);
+                    break;
+                case "--rows":
+                    sizes = Arrays.stream(value.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+                    break;
+                case "--stages":
+                    stages = Arrays.asList(value.toLowerCase(Locale.ROOT).split(","));
+                    break;
+                case "--classifiers":
+                    classifiers = new ArrayList<>();
+                    for (String name : value.split(",")) {
+                        String resolved = BatchRunner.resolveClassifier(name.trim());
+                        if (resolved == null) {
+                            throw new IllegalArgumentException("Unknown classifier: " + name);
+                        }
+                        classifiers.add(resolved);
+                    }
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(value);
+                    break;
+                case "--iterations":
+                    iterations = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "--csv":
+                    csvReport = new File(value);
+                    break;
+                case "--knn":
+                    pipeline.setKnnSettings(KnnSettings.parse(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+    }
+
+    private void run() throws Exception {
+        ColumnStore seed = new StreamingCsvLoader("Migratory status").load(source);
+        System.out.printf("%-28s %10s %12s %12s %14s %14s %14s%n",
+                "stage", "rows", "mean ms/op", "best ms/op", "ops/s", "MB alloc/op", "MB/s");
+        reportRows.add("stage,rows,mean_ms,best_ms,ops_per_second,alloc_mb_per_op,mb_per_second");
+
+        for (int rows : sizes) {
+            File csv = syntheticDataset(seed, rows);
+            ColumnStore[] store = {new StreamingCsvLoader("Migratory status").load(csv)};
+            Instances[] projected = {store[0].project(FEATURES)};
+            ClassBalancer.Sample[] sample = {pipeline.balanceClasses(store[0], ClassBalancer.Mode.OVERSAMPLE)};
+            Instances[] balanced = {store[0].project(FEATURES, sample[0].rows)};
+            int posIndex = PredictionPipeline.positiveClassIndex(balanced[0]);
+            Evaluation[] lastEval = new Evaluation[1];
+
+            if (stages.contains("load")) {
+                measure("load", rows, () -> {
+                    StreamingCsvLoader loader = new StreamingCsvLoader("Migratory status");
+                    store[0] = loader.load(csv);
+                    return loader.getBytesRead();
+                });
+            }
+            if (stages.contains("project")) {
+                measure("project", rows, () -> {
+                    projected[0] = store[0].project(FEATURES);
+                    return 0;
+                });
+            }
+            if (stages.contains("balance")) {
+                measure("balance", rows, () -> {
+                    sample[0] = pipeline.balanceClasses(store[0], ClassBalancer.Mode.OVERSAMPLE);
+                    balanced[0] = store[0].project(FEATURES, sample[0].rows);
+                    return 0;
+                });
+            }
+            if (stages.contains("cv") || stages.contains("roc")) {
+                CrossValidationEngine engine = new CrossValidationEngine();
+                for (String name : classifiers) {
+                    Stage cv = () -> {
+                        lastEval[0] = engine.crossValidate(pipeline.newClassifier(name), balanced[0],
+                                PredictionPipeline.CV_FOLDS, new Random(PredictionPipeline.CV_SEED), null);
+                        return 0;
+                    };
+                    if (stages.contains("cv")) {
+                        measure("cv " + name, rows, cv);
+                    } else if (lastEval[0] == null) {
+                        cv.run();
+                    }
+                }
+            }
+            if (stages.contains("roc")) {
+                measure("roc", rows, () -> {
+                    RocCurve roc = RocCurve.fromPredictions(lastEval[0].predictions(), posIndex);
+                    roc.chartPoints();
+                    return 0;
+                });
+            }
+        }
+
+        if (csvReport != null) {
+            Files.write(csvReport.toPath(), reportRows, StandardCharsets.UTF_8);
+            System.out.println("Report written to " + csvReport);
+        }
+    }
+
+    private void measure(String stage, int rows, Stage operation) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            operation.run();
+        }
+
+        long totalNanos = 0;
+        long bestNanos = Long.MAX_VALUE;
+        long totalAllocated = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            long allocatedBefore = allocatedBytesAllThreads();
+            long start = System.nanoTime();
+            totalBytes += operation.run();
+            long elapsed = System.nanoTime() - start;
+            totalAllocated += allocatedBytesAllThreads() - allocatedBefore;
+            totalNanos += elapsed;
+            bestNanos = Math.min(bestNanos, elapsed);
+        }
+
+        double meanMillis = totalNanos / 1e6 / iterations;
+        double opsPerSecond = iterations / (totalNanos / 1e9);
+        double allocatedMBPerOp = totalAllocated / 1e6 / iterations;
+        double mbPerSecond = totalBytes / 1e6 / (totalNanos / 1e9);
+        System.out.printf("%-28s %10d %12.2f %12.2f %14.2f %14.2f %14s%n", stage, rows, meanMillis,
+                bestNanos / 1e6, opsPerSecond, allocatedMBPerOp,
+                totalBytes > 0 ? String.format("%.1f", mbPerSecond) : "-");
+        reportRows.add(String.format(Locale.ROOT, "\"%s\",%d,%.3f,%.3f,%.3f,%.3f,%s", stage, rows, meanMillis,
+                bestNanos / 1e6, opsPerSecond, allocatedMBPerOp,
+                totalBytes > 0 ? String.format(Locale.ROOT, "%.1f", mbPerSecond) : ""));
+    }
+
+    private static long allocatedBytesAllThreads() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        long total = 0;
+        for (long allocated : ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(bean.getAllThreadIds())) {
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+
+    private File syntheticDataset(ColumnStore seed, int rows) throws IOException {
+        File file = new File(System.getProperty("java.io.tmpdir"),
+                "bird-synthetic-" + seed.fingerprint().substring(0, 16) + "-" + rows + ".csv");
+        if (file.exists()) {
+            return file;
+        }
+
+        Random random = new Random(rows);
+        File temp = new File(file.getPath() + ".tmp");
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(Files.newBufferedWriter(temp.toPath(),
+                StandardCharsets.UTF_8), 1 << 16))) {
+            StringBuilder line = new StringBuilder();
+            for (int c = 0; c < seed.numColumns(); c++) {
+                line.append(c > 0 ? "," : "").append(seed.attribute(c).name());
+            }
+            out.println(line);
+
+            for (int r = 0; r < rows; r++) {
+                int row = rows == seed.numRows() ? r : random.nextInt(seed.numRows());
+                line.setLength(0);
+                for (int c = 0; c < seed.numColumns(); c++) {
+                    if (c > 0) {
+                        line.append(',');
+                    }
+                    double value = seed.column(c)[row];
+                    if (Double.isNaN(value)) {
+                        continue;
+                    }
+                    if (c == seed.classColumnIndex()) {
+                        line.append(seed.attribute(c).value((int) value));
+                    } else {
+                        line.append((float) (rows == seed.numRows() ? value : value * (1 + 0.05 * random.nextGaussian())));
+                    }
+                }
+                out.println(line);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath());
+        return file;
+    }
+}
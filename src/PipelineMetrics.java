@@ -0,0 +1,210 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+/**
+ * Per-stage timers, row counters and allocation gauges for the pipeline (load,
+ * projection, resampling, each cross-validation fold, final build, ROC and
+ * incremental updates), keyed by stage and classifier. Allocation is the calling
+ * thread's, so a sample must end on the thread that began it. Readable from the
+ * metrics panel, over JMX, or as Prometheus text.
+ */
+public class PipelineMetrics implements PipelineMetricsMBean {
+
+    public static final String LOAD = "load";
+    public static final String LOAD_CACHED = "load_cached";
+    public static final String PROJECTION = "projection";
+    public static final String RESAMPLING = "resampling";
+    public static final String CV_FOLD = "cv_fold";
+    public static final String FINAL_BUILD = "final_build";
+    public static final String ROC = "roc";
+    public static final String INCREMENTAL_UPDATE = "incremental_update";
+
+    public static class StageStats {
+        public final String stage;
+        public final String classifier;
+        public long count;
+        public long totalNanos;
+        public long maxNanos;
+        public long lastNanos;
+        public long allocatedBytes;
+        public long lastAllocatedBytes;
+        public long rows;
+
+        StageStats(String stage, String classifier) {
+            this.stage = stage;
+            this.classifier = classifier;
+        }
+
+        StageStats copy() {
+            StageStats copy = new StageStats(stage, classifier);
+            copy.count = count;
+            copy.totalNanos = totalNanos;
+            copy.maxNanos = maxNanos;
+            copy.lastNanos = lastNanos;
+            copy.allocatedBytes = allocatedBytes;
+            copy.lastAllocatedBytes = lastAllocatedBytes;
+            copy.rows = rows;
+            return copy;
+        }
+    }
+
+    public class Sample {
+        private final String stage;
+        private final String classifier;
+        private final long startNanos = System.nanoTime();
+        private final long startAllocated = allocatedBytes();
+
+        private Sample(String stage, String classifier) {
+            this.stage = stage;
+            this.classifier = classifier;
+        }
+
+        public void end() {
+            end(0);
+        }
+
+        public void end(long rows) {
+            record(stage, classifier, System.nanoTime() - startNanos, allocatedBytes() - startAllocated, rows);
+        }
+    }
+
+    private final Map<String, StageStats> stats = new LinkedHashMap<>();
+
+    public Sample begin(String stage, String classifier) {
+        return new Sample(stage, classifier != null ? classifier : "");
+    }
+
+    public synchronized void record(String stage, String classifier, long nanos, long allocated, long rows) {
+        StageStats entry = stats.computeIfAbsent(stage + "|" + classifier, key -> new StageStats(stage, classifier));
+        entry.count++;
+        entry.totalNanos += nanos;
+        entry.maxNanos = Math.max(entry.maxNanos, nanos);
+        entry.lastNanos = nanos;
+        entry.allocatedBytes += allocated;
+        entry.lastAllocatedBytes = allocated;
+        entry.rows += rows;
+    }
+
+    public synchronized List<StageStats> snapshot() {
+        List<StageStats> copies = new ArrayList<>();
+        for (StageStats entry : stats.values()) {
+            copies.add(entry.copy());
+        }
+        return copies;
+    }
+
+    @Override
+    public synchronized void reset() {
+        stats.clear();
+    }
+
+    @Override
+    public synchronized long getRecordedStages() {
+        long count = 0;
+        for (StageStats entry : stats.values()) {
+            count += entry.count;
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized double getTotalSeconds() {
+        long nanos = 0;
+        for (StageStats entry : stats.values()) {
+            nanos += entry.totalNanos;
+        }
+        return nanos / 1e9;
+    }
+
+    @Override
+    public String getPrometheusText() {
+        return toPrometheusText();
+    }
+
+    /**
+     * Metrics in the Prometheus text exposition format.
+     */
+    public String toPrometheusText() {
+        List<StageStats> entries = snapshot();
+        StringBuilder text = new StringBuilder();
+
+        text.append("# HELP bird_stage_seconds Time spent per pipeline stage.\n");
+        text.append("# TYPE bird_stage_seconds summary\n");
+        for (StageStats entry : entries) {
+            text.append("bird_stage_seconds_count").append(labels(entry)).append(' ').append(entry.count).append('\n');
+            text.append("bird_stage_seconds_sum").append(labels(entry)).append(' ')
+                    .append(seconds(entry.totalNanos)).append('\n');
+        }
+        text.append("# HELP bird_stage_max_seconds Longest single run of a pipeline stage.\n");
+        text.append("# TYPE bird_stage_max_seconds gauge\n");
+        for (StageStats entry : entries) {
+            text.append("bird_stage_max_seconds").append(labels(entry)).append(' ')
+                    .append(seconds(entry.maxNanos)).append('\n');
+        }
+        text.append("# HELP bird_stage_allocated_bytes_total Bytes allocated by the thread running the stage.\n");
+        text.append("# TYPE bird_stage_allocated_bytes_total counter\n");
+        for (StageStats entry : entries) {
+            text.append("bird_stage_allocated_bytes_total").append(labels(entry)).append(' ')
+                    .append(entry.allocatedBytes).append('\n');
+        }
+        text.append("# HELP bird_stage_last_allocated_bytes Bytes allocated by the latest run of the stage.\n");
+        text.append("# TYPE bird_stage_last_allocated_bytes gauge\n");
+        for (StageStats entry : entries) {
+            text.append("bird_stage_last_allocated_bytes").append(labels(entry)).append(' ')
+                    .append(entry.lastAllocatedBytes).append('\n');
+        }
+        text.append("# HELP bird_stage_rows_total Rows processed per pipeline stage.\n");
+        text.append("# TYPE bird_stage_rows_total counter\n");
+        for (StageStats entry : entries) {
+            text.append("bird_stage_rows_total").append(labels(entry)).append(' ').append(entry.rows).append('\n');
+        }
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        text.append("# HELP bird_jvm_heap_used_bytes Heap in use.\n");
+        text.append("# TYPE bird_jvm_heap_used_bytes gauge\n");
+        text.append("bird_jvm_heap_used_bytes ").append(memory.getHeapMemoryUsage().getUsed()).append('\n');
+        return text.toString();
+    }
+
+    /**
+     * Registers this instance with the platform MBean server. A second instance in
+     * the same JVM keeps running unregistered.
+     */
+    public void registerMBean() {
+        try {
+            ObjectName name = new ObjectName("bird.predictor:type=PipelineMetrics");
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            }
+        } catch (Exception ex) {
+            System.err.println("Could not register the metrics MBean: " + ex.getMessage());
+        }
+    }
+
+    public static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    private static String labels(StageStats entry) {
+        return "{stage=\"" + escape(entry.stage) + "\",classifier=\"" + escape(entry.classifier) + "\"}";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.6f", nanos / 1e9);
+    }
+}
@@ -0,0 +1,13 @@
+/**
+ * JMX view of PipelineMetrics, registered as bird.predictor:type=PipelineMetrics.
+ */
+public interface PipelineMetricsMBean {
+
+    String getPrometheusText();
+
+    long getRecordedStages();
+
+    double getTotalSeconds();
+
+    void reset();
+}
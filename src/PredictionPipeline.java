@@ -0,0 +1,265 @@
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.classifiers.UpdateableClassifier;
+import weka.classifiers.trees.RandomForest;
+import weka.classifiers.trees.J48;
+import weka.classifiers.functions.Logistic;
+import weka.classifiers.functions.SMO;
+import weka.classifiers.bayes.NaiveBayesUpdateable;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.OptionHandler;
+import weka.core.Utils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The load-independent part of a prediction run: feature projection, class
+ * balancing, cross-validation, the final model build and ROC points. Shared by the
+ * Swing window and the headless batch runner.
+ */
+public class PredictionPipeline {
+
+    public static final int CV_FOLDS = 10;
+    public static final long CV_SEED = 1;
+    public static final long BALANCE_SEED = 1;
+
+    public static final String KNN_NAME = "IBk (k-NN)";
+
+    public static final String[] CLASSIFIER_NAMES = {"Random Forest", "J48 (Decision Tree)", "Logistic Regression",
+            "SMO (SVM)", "Naive Bayes", KNN_NAME};
+
+    public static final String SOFT_VOTE_NAME = "Ensemble (Soft Vote)";
+    public static final String STACKING_NAME = "Ensemble (Stacking)";
+
+    private final CrossValidationEngine cvEngine;
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private volatile KnnSettings knnSettings = KnnSettings.DEFAULT;
+    private final Map<String, String> tunedOptions = new ConcurrentHashMap<>();
+
+    public PredictionPipeline(CrossValidationEngine cvEngine) {
+        this.cvEngine = cvEngine;
+        cvEngine.setMetrics(metrics);
+    }
+
+    public PipelineMetrics metrics() {
+        return metrics;
+    }
+
+    public KnnSettings getKnnSettings() {
+        return knnSettings;
+    }
+
+    public void setKnnSettings(KnnSettings knnSettings) {
+        this.knnSettings = knnSettings;
+    }
+
+    /**
+     * Uses tuned configurations from HyperparameterSearch for the named classifiers:
+     * Weka option strings, or a KnnSettings spec for k-NN.
+     */
+    public void applyTuning(Map<String, String> tuning) {
+        for (Map.Entry<String, String> entry : tuning.entrySet()) {
+            if (KNN_NAME.equals(entry.getKey())) {
+                knnSettings = KnnSettings.parse(entry.getValue());
+            } else if (Arrays.asList(CLASSIFIER_NAMES).contains(entry.getKey())) {
+                tunedOptions.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * A new classifier of the named kind, with k-NN configured by the current settings
+     * and any other classifier by its tuned options.
+     */
+    public Classifier newClassifier(String name) throws Exception {
+        if (SOFT_VOTE_NAME.equals(name) || STACKING_NAME.equals(name)) {
+            return newEnsemble(SOFT_VOTE_NAME.equals(name)
+                    ? EnsembleClassifier.Combination.SOFT_VOTE : EnsembleClassifier.Combination.STACKING);
+        }
+        return KNN_NAME.equals(name) ? knnSettings.newClassifier() : newClassifier(name, tunedOptions.get(name));
+    }
+
+    /**
+     * An ensemble of all six classifiers, each configured as newClassifier(name) would.
+     */
+    public EnsembleClassifier newEnsemble(EnsembleClassifier.Combination combination) throws Exception {
+        Classifier[] members = new Classifier[CLASSIFIER_NAMES.length];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = newClassifier(CLASSIFIER_NAMES[i]);
+        }
+        return new EnsembleClassifier(CLASSIFIER_NAMES.clone(), members, combination);
+    }
+
+    /**
+     * A new classifier of the named kind with the given Weka options, or for k-NN the
+     * given KnnSettings spec. A null or empty configuration means the defaults.
+     */
+    public Classifier newClassifier(String name, String configuration) throws Exception {
+        boolean defaults = configuration == null || configuration.trim().isEmpty();
+        if (KNN_NAME.equals(name)) {
+            return defaults ? KnnSettings.DEFAULT.newClassifier() : KnnSettings.parse(configuration).newClassifier();
+        }
+        Classifier classifier = getClassifierByName(name);
+        if (classifier != null && !defaults) {
+            ((OptionHandler) classifier).setOptions(Utils.splitOptions(configuration));
+        }
+        return classifier;
+    }
+
+    /**
+     * The classifier name plus its k-NN settings or tuned options, for model cache keys.
+     * An ensemble lists the settings of its members.
+     */
+    public String configuredName(String name) {
+        if (SOFT_VOTE_NAME.equals(name) || STACKING_NAME.equals(name)) {
+            StringBuilder members = new StringBuilder();
+            for (String member : CLASSIFIER_NAMES) {
+                String configured = configuredName(member);
+                if (!configured.equals(member)) {
+                    members.append(members.length() > 0 ? "; " : "").append(configured);
+                }
+            }
+            return members.length() > 0 ? name + " [" + members + "]" : name;
+        }
+        if (KNN_NAME.equals(name)) {
+            return name + " [" + knnSettings + "]";
+        }
+        String options = tunedOptions.get(name);
+        return options != null && !options.trim().isEmpty() ? name + " [" + options + "]" : name;
+    }
+
+    /**
+     * Cross-validates the classifier and builds the final model on all of balancedData.
+     * The ROC curve comes from the out-of-fold predictions, downsampled for charting.
+     * Returns null if the listener stops the run.
+     */
+    public ModelCache.Entry trainAndEvaluate(String classifierName, Instances balancedData,
+                                             CrossValidationEngine.FoldListener listener) throws Exception {
+        return trainAndEvaluate(classifierName, balancedData, CV_FOLDS, CV_SEED, listener);
+    }
+
+    public ModelCache.Entry trainAndEvaluate(String classifierName, Instances balancedData, int numFolds, long seed,
+                                             CrossValidationEngine.FoldListener listener) throws Exception {
+        Classifier classifier = newClassifier(classifierName);
+        if (classifier == null) {
+            throw new Exception("Unsupported classifier selected.");
+        }
+        int posIndex = positiveClassIndex(balancedData);
+
+        Evaluation eval = cvEngine.crossValidate(classifier, balancedData, numFolds, new Random(seed), listener);
+        if (eval == null) {
+            return null;
+        }
+
+        String label = classifier.getClass().getSimpleName();
+        PipelineMetrics.Sample rocSample = metrics.begin(PipelineMetrics.ROC, label);
+        RocCurve roc = RocCurve.fromPredictions(eval.predictions(), posIndex);
+        double[][] rocPoints = roc.chartPoints();
+        rocSample.end(roc.positives() + roc.negatives());
+
+        PipelineMetrics.Sample buildSample = metrics.begin(PipelineMetrics.FINAL_BUILD, label);
+        classifier.buildClassifier(balancedData);
+        buildSample.end(balancedData.numInstances());
+        return new ModelCache.Entry(classifier, eval, rocPoints, roc.auc());
+    }
+
+    /**
+     * Updates an UpdateableClassifier (Naive Bayes, IBk) with new rows, test-then-train:
+     * each row is scored before the model learns it, so the returned evaluation and ROC
+     * cover only the new rows. The model is updated in place. Returns null if the
+     * classifier cannot be updated incrementally.
+     */
+    public ModelCache.Entry updateIncrementally(Classifier model, Instances newRows) throws Exception {
+        if (!(model instanceof UpdateableClassifier)) {
+            return null;
+        }
+        int posIndex = positiveClassIndex(newRows);
+
+        PipelineMetrics.Sample sample = metrics.begin(PipelineMetrics.INCREMENTAL_UPDATE,
+                model.getClass().getSimpleName());
+        Evaluation eval = new Evaluation(newRows);
+        for (int i = 0; i < newRows.numInstances(); i++) {
+            Instance instance = newRows.instance(i);
+            if (instance.classIsMissing()) {
+                continue;
+            }
+            eval.evaluateModelOnceAndRecordPrediction(model, instance);
+            ((UpdateableClassifier) model).updateClassifier(instance);
+        }
+        sample.end(newRows.numInstances());
+
+        RocCurve roc = RocCurve.fromPredictions(eval.predictions(), posIndex);
+        return new ModelCache.Entry(model, eval, roc.chartPoints(), roc.auc());
+    }
+
+    /**
+     * Projects the features over the balanced sample's rows, weighting them by class
+     * when the sample is weighted. A null sample projects every row.
+     */
+    public Instances projectFeatures(ColumnStore store, List<String> features, ClassBalancer.Sample balanced) {
+        PipelineMetrics.Sample sample = metrics.begin(PipelineMetrics.PROJECTION, null);
+        Instances newData = balanced != null
+                ? store.project(features, balanced.rows, balanced.classWeights) : store.project(features);
+        sample.end(newData.numInstances());
+        return newData;
+    }
+
+    /**
+     * Balances the classes of the whole store. The sample depends only on the class
+     * column, so one sample can be shared by every feature projection.
+     */
+    public ClassBalancer.Sample balanceClasses(ColumnStore store, ClassBalancer.Mode mode) throws Exception {
+        PipelineMetrics.Sample sample = metrics.begin(PipelineMetrics.RESAMPLING, null);
+        ClassBalancer.Sample balanced = new ClassBalancer(mode, BALANCE_SEED)
+                .balance(store.classColumn(), store.classAttribute().numValues());
+        sample.end(store.numRows());
+
+        int residentIndex = store.classAttribute().indexOfValue("Resident");
+        int migratoryIndex = store.classAttribute().indexOfValue("Migratory");
+        if (residentIndex < 0 || migratoryIndex < 0
+                || balanced.sampleCounts[residentIndex] == 0 || balanced.sampleCounts[migratoryIndex] == 0) {
+            throw new Exception("Resampling resulted in only one class. Please check your dataset.");
+        }
+        return balanced;
+    }
+
+    public static Classifier getClassifierByName(String name) throws Exception {
+        switch (name) {
+            case "Random Forest":
+                return new RandomForest();
+            case "J48 (Decision Tree)":
+                return new J48();
+            case "Logistic Regression":
+                return new Logistic();
+            case "SMO (SVM)":
+                return new SMO();
+            case "Naive Bayes":
+                return new NaiveBayesUpdateable();
+            case KNN_NAME:
+                return KnnSettings.DEFAULT.newClassifier();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Index of the "Migratory" class, which the ROC curves score as positive.
+     */
+    public static int positiveClassIndex(Instances data) throws Exception {
+        if (!data.classAttribute().isNominal() || data.classAttribute().numValues() != 2) {
+            throw new Exception("ROC Curve can only be generated for binary classification.");
+        }
+
+        int posIndex = data.classAttribute().indexOfValue("Migratory");
+        int negIndex = data.classAttribute().indexOfValue("Resident");
+        if (posIndex == -1 || negIndex == -1) {
+            throw new Exception("Class labels 'Migratory' and/or 'Resident' not found.");
+        }
+        return posIndex;
+    }
+}
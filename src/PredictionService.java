@@ -0,0 +1,446 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+import weka.core.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Small HTTP endpoint that serves distributionForInstance() for a model saved by
+ * BatchRunner --save-models.
+ *
+ *   GET  /model    feature and class names
+ *   POST /predict  one row per line, comma-separated feature values in /model order
+ *                  ("?" or empty for missing); answers {"classes": [...], "probabilities": [[...], ...]}
+ *   GET  /stats    request and prediction counts, throughput and p50/p99 latency
+ *
+ * Each worker borrows a Scorer holding its own copy of the model, one reusable
+ * instance and reusable request/response buffers, so a request allocates little
+ * beyond the classifier's own distribution arrays.
+ *
+ * Usage: java -cp build;lib/* PredictionService --model file.model [--port 8080] [--threads N]
+ */
+public class PredictionService {
+
+    private static final int MAX_BODY_BYTES = 16 << 20;
+    private static final int LATENCY_WINDOW = 1 << 16;
+
+    private final Instances header;
+    private final BlockingQueue<Scorer> scorers;
+    private final ExecutorService executor;
+    private HttpServer server;
+
+    private final long startNanos = System.nanoTime();
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private long requests;
+    private long predictions;
+    private long errors;
+
+    public PredictionService(Classifier model, Instances header, int threads) throws Exception {
+        this.header = header;
+        this.scorers = new ArrayBlockingQueue<>(threads);
+        for (int i = 0; i < threads; i++) {
+            scorers.add(new Scorer(AbstractClassifier.makeCopy(model), header));
+        }
+        this.executor = newExecutor(threads);
+    }
+
+    public static void main(String[] args) {
+        String modelPath = null;
+        int port = 8080;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                switch (args[i]) {
+                    case "--model":
+                        modelPath = args[i + 1];
+                        break;
+                    case "--port":
+                        port = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "--threads":
+                        threads = Math.max(1, Integer.parseInt(args[i + 1]));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (modelPath == null || args.length % 2 != 0) {
+                throw new IllegalArgumentException("--model is required.");
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println("Usage: PredictionService --model <file.model> [--port 8080] [--threads N]");
+            System.exit(2);
+        }
+
+        try {
+            Object[] saved = SerializationHelper.readAll(modelPath);
+            PredictionService service = new PredictionService((Classifier) saved[0], (Instances) saved[1], threads);
+            service.start(port);
+            System.out.println("Serving " + modelPath + " on port " + port + " with " + threads + " workers");
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            System.err.println("Could not start the prediction service: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 128);
+        server.createContext("/predict", this::handlePredict);
+        server.createContext("/model", this::handleModel);
+        server.createContext("/stats", this::handleStats);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Virtual threads when the JDK has them (21+), otherwise a fixed pool. Either way
+     * at most 'threads' requests score at once, bounded by the scorer pool.
+     */
+    private static ExecutorService newExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    private void handlePredict(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendText(exchange, 405, "Use POST with one row per line.");
+                return;
+            }
+
+            Scorer scorer;
+            try {
+                scorer = scorers.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                sendText(exchange, 503, "Shutting down.");
+                return;
+            }
+            try {
+                int length = scorer.readBody(exchange.getRequestBody());
+                if (length < 0) {
+                    // Closing the body skips what is left of it, or drops the connection.
+                    exchange.getRequestBody().close();
+                    sendText(exchange, 413, "Request larger than " + MAX_BODY_BYTES + " bytes.");
+                    return;
+                }
+                int rows = scorer.score(length);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, scorer.outLength);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(scorer.out, 0, scorer.outLength);
+                }
+                record(start, rows);
+            } catch (IllegalArgumentException ex) {
+                sendText(exchange, 400, ex.getMessage());
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                sendText(exchange, 500, "Prediction failed: " + ex.getMessage());
+            } finally {
+                scorers.add(scorer);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleModel(HttpExchange exchange) throws IOException {
+        StringBuilder json = new StringBuilder("{\"features\": [");
+        for (int i = 0, n = 0; i < header.numAttributes(); i++) {
+            if (i != header.classIndex()) {
+                json.append(n++ > 0 ? ", " : "").append('"').append(escape(header.attribute(i).name())).append('"');
+            }
+        }
+        json.append("], \"classes\": [");
+        for (int c = 0; c < header.numClasses(); c++) {
+            json.append(c > 0 ? ", " : "").append('"').append(escape(header.classAttribute().value(c))).append('"');
+        }
+        json.append("]}");
+        sendJson(exchange, json.toString());
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        sendJson(exchange, statistics());
+    }
+
+    private synchronized void record(long startNanos, int rows) {
+        latencies[(int) (requests % LATENCY_WINDOW)] = System.nanoTime() - startNanos;
+        requests++;
+        predictions += rows;
+    }
+
+    private synchronized void recordError() {
+        errors++;
+    }
+
+    /**
+     * Percentiles cover the last 65536 successful requests; throughput covers the
+     * service's whole uptime.
+     */
+    public String statistics() {
+        long[] window;
+        long requestCount;
+        long predictionCount;
+        long errorCount;
+        synchronized (this) {
+            window = Arrays.copyOf(latencies, (int) Math.min(requests, LATENCY_WINDOW));
+            requestCount = requests;
+            predictionCount = predictions;
+            errorCount = errors;
+        }
+        Arrays.sort(window);
+        double uptime = (System.nanoTime() - startNanos) / 1e9;
+        return String.format(java.util.Locale.ROOT,
+                "{\"requests\": %d, \"predictions\": %d, \"errors\": %d, \"uptimeSeconds\": %.1f, "
+                        + "\"requestsPerSecond\": %.1f, \"predictionsPerSecond\": %.1f, "
+                        + "\"p50Millis\": %.3f, \"p99Millis\": %.3f}",
+                requestCount, predictionCount, errorCount, uptime, requestCount / uptime, predictionCount / uptime,
+                percentile(window, 0.50) / 1e6, percentile(window, 0.99) / 1e6);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    private void sendText(HttpExchange exchange, int status, String message) throws IOException {
+        recordError();
+        byte[] bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sendJson(HttpExchange exchange, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        exchange.close();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * A model copy plus the buffers one request needs. Weka classifiers are not all
+     * safe to share between threads, so each scorer owns its model.
+     */
+    private static class Scorer {
+        private final Classifier model;
+        private final Instances header;
+        private final Instance instance;
+        private final int[] featureIndices;
+        private final byte[][] classNames;
+        private byte[] body = new byte[8192];
+        private final byte[] field = new byte[256];
+        private byte[] out = new byte[8192];
+        private int outLength;
+
+        Scorer(Classifier model, Instances header) {
+            this.model = model;
+            this.header = header;
+            this.instance = new DenseInstance(header.numAttributes());
+            this.instance.setDataset(header);
+            this.featureIndices = new int[header.numAttributes() - 1];
+            for (int i = 0, n = 0; i < header.numAttributes(); i++) {
+                if (i != header.classIndex()) {
+                    featureIndices[n++] = i;
+                }
+            }
+            this.classNames = new byte[header.numClasses()][];
+            for (int c = 0; c < classNames.length; c++) {
+                classNames[c] = ("\"" + escape(header.classAttribute().value(c)) + "\"").getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        /**
+         * Reads the request into the reusable body buffer; returns -1 if it is larger than
+         * MAX_BODY_BYTES. A body of exactly MAX_BODY_BYTES is accepted once a read shows
+         * it has ended.
+         */
+        int readBody(InputStream in) throws IOException {
+            int length = 0;
+            int read;
+            while ((read = in.read(body, length, body.length - length)) > 0) {
+                length += read;
+                if (length == body.length) {
+                    if (body.length >= MAX_BODY_BYTES) {
+                        return in.read() < 0 ? length : -1;
+                    }
+                    body = Arrays.copyOf(body, Math.min(MAX_BODY_BYTES, body.length * 2));
+                }
+            }
+            return length;
+        }
+
+        /**
+         * Scores every row of the body into the response buffer and returns the row count.
+         */
+        int score(int length) throws Exception {
+            outLength = 0;
+            append("{\"classes\": [");
+            for (int c = 0; c < classNames.length; c++) {
+                if (c > 0) {
+                    append(", ");
+                }
+                append(classNames[c]);
+            }
+            append("], \"probabilities\": [");
+
+            int rows = 0;
+            int column = 0;
+            int fieldLength = 0;
+            boolean blank = true;
+            for (int i = 0; i <= length; i++) {
+                byte b = i < length ? body[i] : (byte) '\n';
+                if (b == '\r') {
+                    continue;
+                }
+                if (b == ',' || b == '\n') {
+                    if (b == '\n' && blank && column == 0) {
+                        continue;
+                    }
+                    if (column >= featureIndices.length) {
+                        throw new IllegalArgumentException("Row " + (rows + 1) + " has more than "
+                                + featureIndices.length + " values.");
+                    }
+                    int attributeIndex = featureIndices[column++];
+                    instance.setValue(attributeIndex, parseField(fieldLength, attributeIndex));
+                    fieldLength = 0;
+                    if (b == '\n') {
+                        if (column != featureIndices.length) {
+                            throw new IllegalArgumentException("Row " + (rows + 1) + " has " + column
+                                    + " values, expected " + featureIndices.length + ".");
+                        }
+                        instance.setMissing(header.classIndex());
+                        appendDistribution(model.distributionForInstance(instance), rows++);
+                        column = 0;
+                        blank = true;
+                    }
+                    continue;
+                }
+                if (fieldLength == field.length) {
+                    throw new IllegalArgumentException("Value too long in row " + (rows + 1) + ".");
+                }
+                field[fieldLength++] = b;
+                blank = false;
+            }
+
+            append("]}");
+            return rows;
+        }
+
+        private double parseField(int length, int attributeIndex) {
+            int start = 0;
+            while (start < length && field[start] == ' ') {
+                start++;
+            }
+            int end = length;
+            while (end > start && field[end - 1] == ' ') {
+                end--;
+            }
+            if (end == start || (end - start == 1 && field[start] == '?')) {
+                return Utils.missingValue();
+            }
+
+            Attribute attribute = header.attribute(attributeIndex);
+            if (attribute.isNominal()) {
+                int index = attribute.indexOfValue(new String(field, start, end - start, StandardCharsets.UTF_8));
+                if (index < 0) {
+                    throw new IllegalArgumentException("Unknown value for " + attribute.name() + ".");
+                }
+                return index;
+            }
+            if (start > 0) {
+                System.arraycopy(field, start, field, 0, end - start);
+            }
+            try {
+                return StreamingCsvLoader.parseNumber(field, end - start);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Not a number for " + attribute.name() + ": "
+                        + new String(field, 0, end - start, StandardCharsets.UTF_8));
+            }
+        }
+
+        private void appendDistribution(double[] distribution, int row) {
+            append(row > 0 ? ", [" : "[");
+            for (int c = 0; c < distribution.length; c++) {
+                if (c > 0) {
+                    append(", ");
+                }
+                appendProbability(distribution[c]);
+            }
+            append("]");
+        }
+
+        // Fixed six decimals written straight into the buffer; probabilities are in [0, 1].
+        private void appendProbability(double p) {
+            if (Double.isNaN(p)) {
+                append("null");
+                return;
+            }
+            long scaled = Math.round(Math.max(0, Math.min(1, p)) * 1_000_000);
+            ensureCapacity(8);
+            out[outLength++] = (byte) ('0' + scaled / 1_000_000);
+            out[outLength++] = '.';
+            long fraction = scaled % 1_000_000;
+            for (long divisor = 100_000; divisor > 0; divisor /= 10) {
+                out[outLength++] = (byte) ('0' + fraction / divisor % 10);
+            }
+        }
+
+        private void append(String ascii) {
+            ensureCapacity(ascii.length());
+            for (int i = 0; i < ascii.length(); i++) {
+                out[outLength++] = (byte) ascii.charAt(i);
+            }
+        }
+
+        private void append(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, out, outLength, bytes.length);
+            outLength += bytes.length;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (outLength + extra > out.length) {
+                out = Arrays.copyOf(out, Math.max(out.length * 2, outLength + extra));
+            }
+        }
+    }
+}
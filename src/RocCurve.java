@@ -0,0 +1,308 @@
+import weka.classifiers.evaluation.NominalPrediction;
+import weka.classifiers.evaluation.Prediction;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ROC curve and AUC computed from primitive score arrays. Positive and negative
+ * scores are sorted separately and merged from the highest threshold down, so the
+ * whole curve costs two primitive sorts and one pass. All rows sharing a score
+ * become a single point, which makes ties a diagonal segment and gives the
+ * tie-corrected (Mann-Whitney) AUC. Rows may carry weights, as the predictions of a
+ * weighted Evaluation do; the rates and the area then count weight instead of rows.
+ */
+public class RocCurve {
+
+    /** Default chart tolerance, in ROC units (0.1% of an axis). */
+    public static final double CHART_TOLERANCE = 1e-3;
+    public static final int CHART_MAX_POINTS = 4000;
+
+    private final double[] fpr;
+    private final double[] tpr;
+    private final double[] thresholds;
+    private final double auc;
+    private final int positives;
+    private final int negatives;
+
+    private RocCurve(double[] fpr, double[] tpr, double[] thresholds, double auc, int positives, int negatives) {
+        this.fpr = fpr;
+        this.tpr = tpr;
+        this.thresholds = thresholds;
+        this.auc = auc;
+        this.positives = positives;
+        this.negatives = negatives;
+    }
+
+    /**
+     * Builds the curve for the rows where positive[i] is true scoring higher.
+     * Only the first n entries of each array are used.
+     */
+    public static RocCurve fromScores(double[] scores, boolean[] positive, int n) {
+        return fromScores(scores, positive, null, n);
+    }
+
+    /**
+     * Builds the curve with each row counted by its weight; weights may be null, in
+     * which case every row counts once. Only the first n entries of each array are used.
+     */
+    public static RocCurve fromScores(double[] scores, boolean[] positive, double[] weights, int n) {
+        int numPositives = 0;
+        for (int i = 0; i < n; i++) {
+            if (positive[i]) {
+                numPositives++;
+            }
+        }
+        double[] positiveScores = new double[numPositives];
+        double[] negativeScores = new double[n - numPositives];
+        double[] positiveWeights = weights != null ? new double[numPositives] : null;
+        double[] negativeWeights = weights != null ? new double[n - numPositives] : null;
+        // Adding 0.0 turns -0.0 into 0.0, so equal scores also have equal bits.
+        for (int i = 0, p = 0, q = 0; i < n; i++) {
+            if (positive[i]) {
+                if (weights != null) {
+                    positiveWeights[p] = weights[i];
+                }
+                positiveScores[p++] = scores[i] + 0.0;
+            } else {
+                if (weights != null) {
+                    negativeWeights[q] = weights[i];
+                }
+                negativeScores[q++] = scores[i] + 0.0;
+            }
+        }
+        return fromGroups(group(positiveScores, positiveWeights), group(negativeScores, negativeWeights),
+                numPositives, n - numPositives);
+    }
+
+    /**
+     * Builds the curve from cross-validated predictions, e.g. Evaluation.predictions(),
+     * scoring each row by its probability for positiveClass and counting it by its
+     * weight.
+     */
+    public static RocCurve fromPredictions(List<Prediction> predictions, int positiveClass) {
+        double[] scores = new double[predictions.size()];
+        boolean[] positive = new boolean[predictions.size()];
+        double[] weights = new double[predictions.size()];
+        boolean weighted = false;
+        int n = 0;
+        for (Prediction prediction : predictions) {
+            if (!(prediction instanceof NominalPrediction) || Double.isNaN(prediction.actual())) {
+                continue;
+            }
+            scores[n] = ((NominalPrediction) prediction).distribution()[positiveClass];
+            positive[n] = prediction.actual() == positiveClass;
+            weights[n] = prediction.weight();
+            weighted |= weights[n] != 1;
+            n++;
+        }
+        return fromScores(scores, positive, weighted ? weights : null, n);
+    }
+
+    /**
+     * Sorts the scores and merges equal ones: {distinct scores ascending, total weight
+     * of each}. Without weights the scores are sorted in place and runs are counted;
+     * with them each row's weight is added to its score's slot by binary search.
+     */
+    private static double[][] group(double[] scores, double[] weights) {
+        double[] sorted = weights != null ? scores.clone() : scores;
+        Arrays.sort(sorted);
+        int distinct = 0;
+        double[] totals = new double[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[distinct - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+            if (weights == null) {
+                totals[distinct - 1]++;
+            }
+        }
+        double[] values = Arrays.copyOf(sorted, distinct);
+        if (weights != null) {
+            for (int i = 0; i < scores.length; i++) {
+                totals[Arrays.binarySearch(values, scores[i])] += weights[i];
+            }
+        }
+        return new double[][]{values, Arrays.copyOf(totals, distinct)};
+    }
+
+    private static RocCurve fromGroups(double[][] positiveGroups, double[][] negativeGroups, int numPositives,
+                                       int numNegatives) {
+        double[] positiveScores = positiveGroups[0];
+        double[] positiveWeights = positiveGroups[1];
+        double[] negativeScores = negativeGroups[0];
+        double[] negativeWeights = negativeGroups[1];
+        double totalPositive = 0;
+        for (double w : positiveWeights) {
+            totalPositive += w;
+        }
+        double totalNegative = 0;
+        for (double w : negativeWeights) {
+            totalNegative += w;
+        }
+
+        // One point per distinct score plus the origin.
+        double[] fpr = new double[positiveScores.length + negativeScores.length + 1];
+        double[] tpr = new double[fpr.length];
+        double[] thresholds = new double[fpr.length];
+        thresholds[0] = Double.POSITIVE_INFINITY;
+
+        int p = positiveScores.length - 1;
+        int q = negativeScores.length - 1;
+        double truePositives = 0;
+        double falsePositives = 0;
+        double area = 0;
+        int points = 1;
+        while (p >= 0 || q >= 0) {
+            double threshold = Math.max(p >= 0 ? positiveScores[p] : Double.NEGATIVE_INFINITY,
+                    q >= 0 ? negativeScores[q] : Double.NEGATIVE_INFINITY);
+            double previousTruePositives = truePositives;
+            double previousFalsePositives = falsePositives;
+            while (p >= 0 && positiveScores[p] == threshold) {
+                truePositives += positiveWeights[p];
+                p--;
+            }
+            while (q >= 0 && negativeScores[q] == threshold) {
+                falsePositives += negativeWeights[q];
+                q--;
+            }
+            // Trapezoid in weight units; ties contribute half, as in Mann-Whitney U.
+            area += (falsePositives - previousFalsePositives) * (truePositives + previousTruePositives) / 2.0;
+
+            fpr[points] = totalNegative > 0 ? falsePositives / totalNegative : 0;
+            tpr[points] = totalPositive > 0 ? truePositives / totalPositive : 0;
+            thresholds[points] = threshold;
+            points++;
+        }
+
+        double auc = totalPositive > 0 && totalNegative > 0 ? area / (totalPositive * totalNegative) : Double.NaN;
+        return new RocCurve(Arrays.copyOf(fpr, points), Arrays.copyOf(tpr, points),
+                Arrays.copyOf(thresholds, points), auc, numPositives, numNegatives);
+    }
+
+    public double auc() {
+        return auc;
+    }
+
+    public int numPoints() {
+        return fpr.length;
+    }
+
+    public int positives() {
+        return positives;
+    }
+
+    public int negatives() {
+        return negatives;
+    }
+
+    public double[] thresholds() {
+        return thresholds;
+    }
+
+    /**
+     * All points as {fpr[], tpr[]}, the layout DefaultXYDataset expects.
+     */
+    public double[][] points() {
+        return new double[][]{fpr.clone(), tpr.clone()};
+    }
+
+    /**
+     * Points for charting: a subset of the curve that stays within the given distance
+     * of every dropped point (Ramer-Douglas-Peucker). If that still leaves more than
+     * maxPoints, the tolerance is doubled until it does not.
+     */
+    public double[][] downsample(double tolerance, int maxPoints) {
+        if (fpr.length <= 2) {
+            return points();
+        }
+        boolean[] keep = new boolean[fpr.length];
+        int kept = simplify(tolerance, keep);
+        while (kept > maxPoints && tolerance < 1) {
+            tolerance *= 2;
+            kept = simplify(tolerance, keep);
+        }
+
+        double[][] result = new double[2][kept];
+        for (int i = 0, k = 0; i < fpr.length; i++) {
+            if (keep[i]) {
+                result[0][k] = fpr[i];
+                result[1][k] = tpr[i];
+                k++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * True positive rate at each of the given false positive rates (ascending),
+     * interpolated linearly along the curve. Where the curve rises vertically at a
+     * rate, the top of the rise is used.
+     */
+    public double[] tprAt(double[] fprGrid) {
+        double[] result = new double[fprGrid.length];
+        int j = 0;
+        for (int g = 0; g < fprGrid.length; g++) {
+            double x = fprGrid[g];
+            while (j + 1 < fpr.length && fpr[j + 1] <= x) {
+                j++;
+            }
+            if (j + 1 >= fpr.length || fpr[j] > x) {
+                result[g] = tpr[j];
+            } else {
+                result[g] = tpr[j] + (tpr[j + 1] - tpr[j]) * (x - fpr[j]) / (fpr[j + 1] - fpr[j]);
+            }
+        }
+        return result;
+    }
+
+    public double[][] chartPoints() {
+        return downsample(CHART_TOLERANCE, CHART_MAX_POINTS);
+    }
+
+    private int simplify(double tolerance, boolean[] keep) {
+        Arrays.fill(keep, false);
+        int last = fpr.length - 1;
+        keep[0] = true;
+        keep[last] = true;
+        int kept = 2;
+
+        // Explicit stack of [start, end] segments; recursion could be n deep.
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = last;
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+            double dx = fpr[end] - fpr[start];
+            double dy = tpr[end] - tpr[start];
+            double length = Math.sqrt(dx * dx + dy * dy);
+
+            int farthest = -1;
+            double maxDistance = tolerance;
+            for (int i = start + 1; i < end; i++) {
+                double distance = length > 0
+                        ? Math.abs(dy * (fpr[i] - fpr[start]) - dx * (tpr[i] - tpr[start])) / length
+                        : Math.hypot(fpr[i] - fpr[start], tpr[i] - tpr[start]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                kept++;
+                if (top + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = start;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = end;
+            }
+        }
+        return kept;
+    }
+}
@@ -0,0 +1,548 @@
+import weka.core.Attribute;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads a CSV file straight into a ColumnStore without building Weka rows. The file
+ * is read through memory-mapped windows and parsed byte by byte. Column types are
+ * inferred from the first rows: numeric columns and the class column are kept, and
+ * any other column is skipped unless it was asked for with includeColumn(), in which
+ * case it is kept as a nominal attribute.
+ *
+ * Fields may be enclosed in double quotes (with "" as an escaped quote); single
+ * quotes are plain text, so names like St'ovicek load as-is. Empty fields and "?"
+ * are missing values.
+ */
+public class StreamingCsvLoader {
+
+    private static final int SAMPLE_ROWS = 1000;
+    private static final long WINDOW_SIZE = 256L << 20;
+
+    private static final int SKIP = 0;
+    private static final int NUMERIC = 1;
+    private static final int NOMINAL = 2;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final String classColumnName;
+    private final Set<String> includedColumns = new HashSet<>();
+
+    private long bytesRead;
+    private int rowsRead;
+    private long elapsedNanos;
+    private int unparseableValues;
+
+    public StreamingCsvLoader(String classColumnName) {
+        this.classColumnName = classColumnName;
+    }
+
+    /**
+     * Keeps a non-numeric column (e.g. "Family") as a nominal attribute. It is not
+     * encoded here: classifiers that need numeric inputs encode it themselves (Logistic
+     * and SMO with Weka's NominalToBinary, k-NN with the overlap distance).
+     */
+    public void includeColumn(String name) {
+        includedColumns.add(name);
+    }
+
+    /**
+     * Identifies the loader settings that shape the resulting store, for caching.
+     */
+    public String optionsKey() {
+        List<String> included = new ArrayList<>(includedColumns);
+        Collections.sort(included);
+        return "class=" + classColumnName + ";include=" + String.join(",", included);
+    }
+
+    public ColumnStore load(File file) throws Exception {
+        long start = System.nanoTime();
+
+        SampleHandler sample = new SampleHandler();
+        parse(file, 0, false, sample);
+        if (sample.header == null) {
+            throw new Exception("The file is empty.");
+        }
+
+        int classColumn = Arrays.asList(sample.header).indexOf(classColumnName);
+        if (classColumn < 0) {
+            throw new Exception("Attribute '" + classColumnName + "' not found in the dataset.");
+        }
+        if (sample.numeric[classColumn] && sample.nonMissing[classColumn] > 0) {
+            throw new Exception("'" + classColumnName + "' attribute must be nominal.");
+        }
+
+        int[] kinds = new int[sample.header.length];
+        for (int c = 0; c < kinds.length; c++) {
+            if (c == classColumn) {
+                kinds[c] = NOMINAL;
+            } else if (sample.numeric[c]) {
+                kinds[c] = NUMERIC;
+            } else if (includedColumns.contains(sample.header[c])) {
+                kinds[c] = NOMINAL;
+            } else {
+                kinds[c] = SKIP;
+            }
+        }
+
+        long fileSize = file.length();
+        int expectedRows = sample.rows > 0 && sample.bytes > 0
+                ? (int) Math.min(Integer.MAX_VALUE - 8, fileSize * sample.rows / sample.bytes + 16)
+                : 1024;
+        LoadHandler load = new LoadHandler(sample.header, kinds, Math.max(16, expectedRows));
+        parse(file, 0, false, load);
+
+        List<Attribute> attributes = new ArrayList<>();
+        List<double[]> columns = new ArrayList<>();
+        int storeClassColumn = -1;
+        for (int c = 0; c < kinds.length; c++) {
+            if (kinds[c] == SKIP) {
+                continue;
+            }
+            if (c == classColumn) {
+                storeClassColumn = attributes.size();
+            }
+            if (kinds[c] == NUMERIC) {
+                attributes.add(new Attribute(sample.header[c]));
+            } else {
+                attributes.add(new Attribute(sample.header[c], load.nominalValues.get(c)));
+            }
+            columns.add(Arrays.copyOf(load.columns[c], load.rows));
+        }
+
+        bytesRead = fileSize;
+        rowsRead = load.rows;
+        unparseableValues = load.unparseable;
+        elapsedNanos = System.nanoTime() - start;
+
+        return new ColumnStore(attributes.toArray(new Attribute[0]), columns.toArray(new double[0][]),
+                storeClassColumn, load.rows);
+    }
+
+    /**
+     * Loads the rows of file that start at fromOffset into a store with the same
+     * attributes as schema, e.g. rows appended since a previous load. With an offset
+     * of 0 the file's own header is skipped and the whole file is read, so a separate
+     * batch file with the same columns can be appended. Otherwise only complete lines
+     * are read. getBytesRead() is the offset to continue from next time. Nominal
+     * values the schema does not know are treated as missing.
+     */
+    public ColumnStore loadAppended(File file, ColumnStore schema, long fromOffset) throws Exception {
+        long start = System.nanoTime();
+
+        SampleHandler headerOnly = new SampleHandler();
+        headerOnly.headerOnly = true;
+        parse(file, 0, true, headerOnly);
+        if (headerOnly.header == null) {
+            throw new Exception("The file is empty.");
+        }
+
+        String[] header = headerOnly.header;
+        int[] kinds = new int[header.length];
+        int[] storeColumns = new int[header.length];
+        Attribute[] attributes = new Attribute[schema.numColumns()];
+        for (int c = 0; c < schema.numColumns(); c++) {
+            attributes[c] = schema.attribute(c);
+        }
+        for (int c = 0; c < header.length; c++) {
+            storeColumns[c] = -1;
+            for (int s = 0; s < attributes.length; s++) {
+                if (attributes[s].name().equals(header[c])) {
+                    storeColumns[c] = s;
+                    kinds[c] = attributes[s].isNumeric() ? NUMERIC : NOMINAL;
+                }
+            }
+        }
+        for (Attribute attribute : attributes) {
+            if (!Arrays.asList(header).contains(attribute.name())) {
+                throw new Exception("Attribute '" + attribute.name() + "' not found in " + file.getName() + ".");
+            }
+        }
+
+        LoadHandler load = new LoadHandler(header, kinds, 1024);
+        load.headerSkipped = fromOffset > 0;
+        for (int c = 0; c < header.length; c++) {
+            if (kinds[c] == NOMINAL) {
+                load.fixNominalValues(c, attributes[storeColumns[c]]);
+            }
+        }
+        long end = parse(file, fromOffset, fromOffset > 0, load);
+
+        double[][] columns = new double[attributes.length][];
+        for (int c = 0; c < header.length; c++) {
+            if (storeColumns[c] >= 0) {
+                columns[storeColumns[c]] = Arrays.copyOf(load.columns[c], load.rows);
+            }
+        }
+
+        bytesRead = end;
+        rowsRead = load.rows;
+        unparseableValues = load.unparseable;
+        elapsedNanos = System.nanoTime() - start;
+        return new ColumnStore(attributes, columns, schema.classColumnIndex(), load.rows);
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public int getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public String throughputSummary() {
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        String summary = String.format("Loaded %d rows (%.1f MB) in %d ms: %.1f MB/s, %.0f rows/s",
+                rowsRead, bytesRead / 1e6, elapsedNanos / 1_000_000,
+                bytesRead / 1e6 / seconds, rowsRead / seconds);
+        if (unparseableValues > 0) {
+            summary += ", " + unparseableValues + " unparseable values treated as missing";
+        }
+        return summary;
+    }
+
+    private interface FieldHandler {
+        void field(int column, byte[] buf, int len);
+
+        /**
+         * Called at the end of every record. Return false to stop parsing.
+         */
+        boolean endRecord(long offset);
+    }
+
+    /**
+     * Parses from fromOffset and returns the offset just past the last complete line.
+     * With completeLinesOnly, a final line without a newline is left unread, since a
+     * writer may still be appending to it.
+     */
+    private long parse(File file, long fromOffset, boolean completeLinesOnly, FieldHandler handler) throws Exception {
+        byte[] field = new byte[256];
+        int len = 0;
+        int column = 0;
+        boolean inQuotes = false;
+        boolean afterQuote = false;
+        boolean fieldStarted = false;
+        long offset = fromOffset;
+        long lineEnd = fromOffset;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            while (offset < size) {
+                long windowSize = Math.min(WINDOW_SIZE, size - offset);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, windowSize);
+                // Skip a UTF-8 byte order mark.
+                if (offset == 0 && windowSize >= 3 && window.get(0) == (byte) 0xEF
+                        && window.get(1) == (byte) 0xBB && window.get(2) == (byte) 0xBF) {
+                    window.position(3);
+                }
+
+                while (window.hasRemaining()) {
+                    byte b = window.get();
+                    if (inQuotes) {
+                        if (b == '"') {
+                            inQuotes = false;
+                            afterQuote = true;
+                        } else {
+                            if (len == field.length) {
+                                field = Arrays.copyOf(field, len * 2);
+                            }
+                            field[len++] = b;
+                        }
+                        continue;
+                    }
+
+                    if (afterQuote) {
+                        afterQuote = false;
+                        if (b == '"') {
+                            inQuotes = true;
+                            if (len == field.length) {
+                                field = Arrays.copyOf(field, len * 2);
+                            }
+                            field[len++] = '"';
+                            continue;
+                        }
+                    }
+
+                    if (b == ',') {
+                        handler.field(column++, field, len);
+                        len = 0;
+                        fieldStarted = false;
+                    } else if (b == '\n') {
+                        lineEnd = offset + window.position();
+                        if (column > 0 || fieldStarted) {
+                            handler.field(column, field, len);
+                            if (!handler.endRecord(lineEnd)) {
+                                return lineEnd;
+                            }
+                        }
+                        len = 0;
+                        column = 0;
+                        fieldStarted = false;
+                    } else if (b == '\r') {
+                        continue;
+                    } else if (b == '"' && !fieldStarted) {
+                        inQuotes = true;
+                        fieldStarted = true;
+                    } else {
+                        if (len == field.length) {
+                            field = Arrays.copyOf(field, len * 2);
+                        }
+                        field[len++] = b;
+                        fieldStarted = true;
+                    }
+                }
+                offset += windowSize;
+            }
+
+            if (!completeLinesOnly && (column > 0 || fieldStarted)) {
+                handler.field(column, field, len);
+                handler.endRecord(offset);
+                lineEnd = offset;
+            }
+        }
+        return lineEnd;
+    }
+
+    private class SampleHandler implements FieldHandler {
+        String[] header;
+        List<String> headerFields = new ArrayList<>();
+        boolean[] numeric;
+        int[] nonMissing;
+        int rows;
+        long bytes;
+        boolean headerOnly;
+        private long headerEnd;
+
+        @Override
+        public void field(int column, byte[] buf, int len) {
+            if (header == null) {
+                headerFields.add(new String(buf, 0, len, StandardCharsets.UTF_8).trim());
+                return;
+            }
+            if (column >= numeric.length || !numeric[column] || isMissing(buf, len)) {
+                return;
+            }
+            nonMissing[column]++;
+            try {
+                parseNumber(buf, len);
+            } catch (NumberFormatException ex) {
+                numeric[column] = false;
+            }
+        }
+
+        @Override
+        public boolean endRecord(long offset) {
+            if (header == null) {
+                header = headerFields.toArray(new String[0]);
+                numeric = new boolean[header.length];
+                nonMissing = new int[header.length];
+                Arrays.fill(numeric, true);
+                headerEnd = offset;
+                return !headerOnly;
+            }
+            rows++;
+            bytes = offset - headerEnd;
+            return rows < SAMPLE_ROWS;
+        }
+    }
+
+    private class LoadHandler implements FieldHandler {
+        final int[] kinds;
+        final double[][] columns;
+        final Map<Integer, List<String>> nominalValues = new HashMap<>();
+        private final Map<Integer, Map<String, Integer>> nominalIndices = new HashMap<>();
+        int rows;
+        int unparseable;
+        boolean headerSkipped = false;
+        private boolean fixedNominals = false;
+        private int capacity;
+
+        LoadHandler(String[] header, int[] kinds, int capacity) {
+            this.kinds = kinds;
+            this.capacity = capacity;
+            columns = new double[header.length][];
+            for (int c = 0; c < header.length; c++) {
+                if (kinds[c] != SKIP) {
+                    columns[c] = new double[capacity];
+                    Arrays.fill(columns[c], Double.NaN);
+                }
+                if (kinds[c] == NOMINAL) {
+                    nominalValues.put(c, new ArrayList<>());
+                    nominalIndices.put(c, new HashMap<>());
+                }
+            }
+        }
+
+        /**
+         * Uses the attribute's value indices for the column; unknown values become missing.
+         */
+        void fixNominalValues(int column, Attribute attribute) {
+            fixedNominals = true;
+            for (int v = 0; v < attribute.numValues(); v++) {
+                nominalIndices.get(column).put(attribute.value(v), v);
+                nominalValues.get(column).add(attribute.value(v));
+            }
+        }
+
+        @Override
+        public void field(int column, byte[] buf, int len) {
+            if (!headerSkipped || column >= kinds.length || kinds[column] == SKIP || isMissing(buf, len)) {
+                return;
+            }
+
+            if (kinds[column] == NUMERIC) {
+                try {
+                    columns[column][rows] = parseNumber(buf, len);
+                } catch (NumberFormatException ex) {
+                    unparseable++;
+                }
+            } else {
+                String value = new String(buf, 0, len, StandardCharsets.UTF_8).trim();
+                Map<String, Integer> indices = nominalIndices.get(column);
+                Integer index = indices.get(value);
+                if (index == null && fixedNominals) {
+                    unparseable++;
+                    return;
+                }
+                if (index == null) {
+                    index = indices.size();
+                    indices.put(value, index);
+                    nominalValues.get(column).add(value);
+                }
+                columns[column][rows] = index;
+            }
+        }
+
+        @Override
+        public boolean endRecord(long offset) {
+            if (!headerSkipped) {
+                headerSkipped = true;
+            } else if (++rows == capacity) {
+                grow();
+            }
+            return true;
+        }
+
+        private void grow() {
+            int newCapacity = capacity + (capacity >> 1) + 1;
+            for (int c = 0; c < columns.length; c++) {
+                if (columns[c] != null) {
+                    columns[c] = Arrays.copyOf(columns[c], newCapacity);
+                    Arrays.fill(columns[c], capacity, newCapacity, Double.NaN);
+                }
+            }
+            capacity = newCapacity;
+        }
+    }
+
+    private static boolean isMissing(byte[] buf, int len) {
+        int start = 0;
+        int end = len;
+        while (start < end && buf[start] == ' ') {
+            start++;
+        }
+        while (end > start && buf[end - 1] == ' ') {
+            end--;
+        }
+        return start == end || (end - start == 1 && buf[start] == '?');
+    }
+
+    /**
+     * Parses a decimal number of the form [+-]digits[.digits][eE[+-]digits] without
+     * building a String. Either digit run around the point may be empty, but not both,
+     * as in Double.parseDouble. Empty fields and "?" are missing and give NaN; anything
+     * else, such as NaN, Infinity, 1d or 0x1p3, throws NumberFormatException. Numbers with up to 15 significant digits and a decimal
+     * exponent within 22 are computed exactly with one multiplication or division, so
+     * they round the same as Double.parseDouble; other valid numbers fall back to it.
+     */
+    static double parseNumber(byte[] buf, int len) {
+        int i = 0;
+        int end = len;
+        while (i < end && buf[i] == ' ') {
+            i++;
+        }
+        while (end > i && buf[end - 1] == ' ') {
+            end--;
+        }
+        int start = i;
+        if (start == end || (end - start == 1 && buf[start] == '?')) {
+            return Double.NaN;
+        }
+
+        boolean negative = false;
+        if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+            negative = buf[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean valid = false;
+        while (i < end && buf[i] >= '0' && buf[i] <= '9') {
+            mantissa = mantissa * 10 + (buf[i] - '0');
+            if (mantissa != 0) {
+                significantDigits++;
+            }
+            valid = true;
+            i++;
+        }
+        if (i < end && buf[i] == '.') {
+            i++;
+            while (i < end && buf[i] >= '0' && buf[i] <= '9') {
+                mantissa = mantissa * 10 + (buf[i] - '0');
+                if (mantissa != 0) {
+                    significantDigits++;
+                }
+                exponent--;
+                valid = true;
+                i++;
+            }
+        }
+        if (valid && i < end && (buf[i] == 'e' || buf[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+                negativeExponent = buf[i] == '-';
+                i++;
+            }
+            int exponentValue = 0;
+            valid = false;
+            while (i < end && buf[i] >= '0' && buf[i] <= '9') {
+                exponentValue = Math.min(exponentValue * 10 + (buf[i] - '0'), 100000);
+                valid = true;
+                i++;
+            }
+            exponent += negativeExponent ? -exponentValue : exponentValue;
+        }
+
+        if (i != end || !valid) {
+            throw new NumberFormatException("Not a number: "
+                    + new String(buf, start, end - start, StandardCharsets.UTF_8));
+        }
+        if (significantDigits > 15 || exponent < -22 || exponent > 22) {
+            return Double.parseDouble(new String(buf, start, end - start, StandardCharsets.US_ASCII));
+        }
+
+        double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+    }
+}
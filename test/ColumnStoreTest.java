@@ -0,0 +1,125 @@
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Projections that include the nominal Family column. It stays a nominal attribute,
+ * and each classifier encodes it itself: Logistic and SMO through Weka's internal
+ * NominalToBinary filter, k-NN through the overlap distance (0 when equal, 1
+ * otherwise), and the trees and Naive Bayes natively.
+ */
+public class ColumnStoreTest {
+
+    private static final List<String> FEATURES = Arrays.asList("Body mass", "Latitude", "Family");
+
+    private static Instances data;
+
+    @BeforeClass
+    public static void loadBundledDataset() throws Exception {
+        StreamingCsvLoader loader = new StreamingCsvLoader("Migratory status");
+        loader.includeColumn("Family");
+        ColumnStore store = loader.load(new File("data/bird-diversity (1).csv"));
+        PredictionPipeline pipeline = new PredictionPipeline(new CrossValidationEngine(1));
+        data = pipeline.projectFeatures(store, FEATURES,
+                pipeline.balanceClasses(store, ClassBalancer.Mode.OVERSAMPLE));
+    }
+
+    @Test
+    public void familyIsProjectedAsNominal() {
+        assertEquals(FEATURES.size() + 1, data.numAttributes());
+        assertTrue(data.attribute("Family").isNominal());
+        assertTrue(data.attribute("Family").numValues() > 2);
+        assertTrue(data.attribute("Body mass").isNumeric());
+    }
+
+    @Test
+    public void logisticAndSmoBinarizeFamily() throws Exception {
+        int[] counts = data.attributeStats(data.attribute("Family").index()).nominalCounts;
+        int common = 0;
+        for (int v = 1; v < counts.length; v++) {
+            if (counts[v] > counts[common]) {
+                common = v;
+            }
+        }
+        String value = data.attribute("Family").value(common);
+        for (String name : new String[]{"Logistic Regression", "SMO (SVM)"}) {
+            Classifier classifier = PredictionPipeline.getClassifierByName(name);
+            classifier.buildClassifier(data);
+            // A coefficient per Family value, named after its indicator attribute.
+            String model = classifier.toString();
+            assertTrue(name + " has no indicator for " + value, model.contains("Family=" + value));
+        }
+    }
+
+    @Test
+    public void crossValidatesWithFamily() throws Exception {
+        for (String name : new String[]{"Logistic Regression", "SMO (SVM)", PredictionPipeline.KNN_NAME}) {
+            Classifier classifier = new PredictionPipeline(new CrossValidationEngine(1)).newClassifier(name);
+            Evaluation expected = new Evaluation(data);
+            expected.crossValidateModel(classifier, data, PredictionPipeline.CV_FOLDS,
+                    new Random(PredictionPipeline.CV_SEED));
+            Evaluation actual = new CrossValidationEngine(1).crossValidate(classifier, data,
+                    PredictionPipeline.CV_FOLDS, new Random(PredictionPipeline.CV_SEED), null);
+            assertEquals(name, expected.pctCorrect(), actual.pctCorrect(), 1e-9);
+            assertTrue(name + " at " + actual.pctCorrect() + "%", actual.pctCorrect() > 60);
+        }
+    }
+
+    @Test
+    public void kdTreeMatchesIBkOnFamily() throws Exception {
+        Instances train = new Instances(data);
+        train.randomize(new Random(1));
+        int split = train.numInstances() * 3 / 4;
+        Instances test = new Instances(train, split, train.numInstances() - split);
+        train = new Instances(train, 0, split);
+
+        for (int k : new int[]{1, 5}) {
+            Classifier expected = new KnnSettings(k, KdTreeKnn.Distance.EUCLIDEAN, true, KnnSettings.Search.LINEAR)
+                    .newClassifier();
+            expected.buildClassifier(train);
+            KdTreeKnn actual = new KdTreeKnn(k, KdTreeKnn.Distance.EUCLIDEAN, true);
+            actual.buildClassifier(train);
+            for (int i = 0; i < test.numInstances(); i++) {
+                // IBk widens its ranges to each query; skip queries outside the training ranges.
+                if (outsideRanges(train, test, i)) {
+                    continue;
+                }
+                assertArrayEquals("k=" + k + " row " + i, expected.distributionForInstance(test.instance(i)),
+                        actual.distributionForInstance(test.instance(i)), 1e-9);
+            }
+        }
+    }
+
+    private static boolean outsideRanges(Instances train, Instances test, int row) {
+        for (int a = 0; a < train.numAttributes(); a++) {
+            if (a == train.classIndex() || !train.attribute(a).isNumeric() || test.instance(row).isMissing(a)) {
+                continue;
+            }
+            double value = test.instance(row).value(a);
+            double[] column = train.attributeToDoubleArray(a);
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (double v : column) {
+                if (!Double.isNaN(v)) {
+                    min = Math.min(min, v);
+                    max = Math.max(max, v);
+                }
+            }
+            if (value < min || value > max) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
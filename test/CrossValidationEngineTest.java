@@ -0,0 +1,111 @@
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.classifiers.evaluation.NominalPrediction;
+import weka.classifiers.evaluation.Prediction;
+import weka.core.Instances;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CrossValidationEngineTest {
+
+    private static final int FOLDS = PredictionPipeline.CV_FOLDS;
+
+    private static Instances data;
+
+    @BeforeClass
+    public static void loadBundledDataset() throws Exception {
+        ColumnStore store = new StreamingCsvLoader("Migratory status").load(new File("data/bird-diversity (1).csv"));
+        PredictionPipeline pipeline = new PredictionPipeline(new CrossValidationEngine(1));
+        ClassBalancer.Sample balanced = pipeline.balanceClasses(store, ClassBalancer.Mode.OVERSAMPLE);
+        data = pipeline.projectFeatures(store, Arrays.asList("Latitude", "Body mass", "Heterozygosity"), balanced);
+    }
+
+    private static Evaluation weka(String classifierName) throws Exception {
+        Classifier classifier = new PredictionPipeline(new CrossValidationEngine(1)).newClassifier(classifierName);
+        Evaluation eval = new Evaluation(data);
+        eval.crossValidateModel(classifier, data, FOLDS, new Random(PredictionPipeline.CV_SEED));
+        return eval;
+    }
+
+    private static Evaluation engine(String classifierName, int parallelism) throws Exception {
+        CrossValidationEngine engine = new CrossValidationEngine(parallelism);
+        Classifier classifier = new PredictionPipeline(engine).newClassifier(classifierName);
+        return engine.crossValidate(classifier, data, FOLDS, new Random(PredictionPipeline.CV_SEED), null);
+    }
+
+    private static void assertSameEvaluation(String message, Evaluation expected, Evaluation actual) {
+        assertEquals(message, expected.pctCorrect(), actual.pctCorrect(), 1e-9);
+        double[][] expectedMatrix = expected.confusionMatrix();
+        double[][] actualMatrix = actual.confusionMatrix();
+        for (int c = 0; c < expectedMatrix.length; c++) {
+            assertArrayEquals(message + " confusion row " + c, expectedMatrix[c], actualMatrix[c], 1e-9);
+        }
+
+        List<Prediction> expectedPredictions = expected.predictions();
+        List<Prediction> actualPredictions = actual.predictions();
+        assertEquals(message, expectedPredictions.size(), actualPredictions.size());
+        for (int i = 0; i < expectedPredictions.size(); i++) {
+            NominalPrediction e = (NominalPrediction) expectedPredictions.get(i);
+            NominalPrediction a = (NominalPrediction) actualPredictions.get(i);
+            assertEquals(message + " actual " + i, e.actual(), a.actual(), 0);
+            assertEquals(message + " predicted " + i, e.predicted(), a.predicted(), 0);
+            assertEquals(message + " weight " + i, e.weight(), a.weight(), 0);
+            assertArrayEquals(message + " distribution " + i, e.distribution(), a.distribution(), 1e-9);
+        }
+    }
+
+    @Test
+    public void matchesCrossValidateModelSequentially() throws Exception {
+        for (String name : PredictionPipeline.CLASSIFIER_NAMES) {
+            assertSameEvaluation(name, weka(name), engine(name, 1));
+        }
+    }
+
+    @Test
+    public void matchesCrossValidateModelInParallel() throws Exception {
+        int parallelism = Math.max(4, Runtime.getRuntime().availableProcessors());
+        for (String name : PredictionPipeline.CLASSIFIER_NAMES) {
+            assertSameEvaluation(name, weka(name), engine(name, parallelism));
+        }
+    }
+
+    @Test
+    public void listenerSeesEveryFold() throws Exception {
+        for (int parallelism : new int[]{1, 4}) {
+            CrossValidationEngine engine = new CrossValidationEngine(parallelism);
+            List<Integer> completed = new ArrayList<>();
+            Evaluation eval = engine.crossValidate(PredictionPipeline.getClassifierByName("Naive Bayes"), data, FOLDS,
+                    new Random(PredictionPipeline.CV_SEED), (done, numFolds, foldEval) -> {
+                        assertEquals(FOLDS, numFolds);
+                        completed.add(done);
+                        return true;
+                    });
+            assertEquals(data.numInstances(), (int) eval.numInstances());
+            assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), completed);
+        }
+    }
+
+    @Test
+    public void listenerCanStopTheRun() throws Exception {
+        for (int parallelism : new int[]{1, 4}) {
+            CrossValidationEngine engine = new CrossValidationEngine(parallelism);
+            AtomicInteger calls = new AtomicInteger();
+            Evaluation eval = engine.crossValidate(PredictionPipeline.getClassifierByName("J48 (Decision Tree)"), data,
+                    FOLDS, new Random(PredictionPipeline.CV_SEED),
+                    (done, numFolds, foldEval) -> calls.incrementAndGet() < 3);
+            assertNull(eval);
+            assertEquals(3, calls.get());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import weka.classifiers.Classifier;
+import weka.classifiers.UpdateableClassifier;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Compares KdTreeKnn with IBk over a linear search. Features take a few integer
+ * values so that many neighbours tie. IBk widens its normalization ranges with every
+ * query and update, while KdTreeKnn keeps the ranges seen at build time, so all rows
+ * here stay inside the training ranges.
+ */
+public class KdTreeKnnTest {
+
+    private static final int GRID = 6;
+
+    private static Instances header() {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        attributes.add(new Attribute("x"));
+        attributes.add(new Attribute("colour", Arrays.asList("red", "green", "blue")));
+        attributes.add(new Attribute("y"));
+        attributes.add(new Attribute("Migratory status", Arrays.asList("Resident", "Migratory")));
+        Instances header = new Instances("knn", attributes, 0);
+        header.setClassIndex(header.numAttributes() - 1);
+        return header;
+    }
+
+    private static Instance row(Instances header, Random random, double missing) {
+        double x = random.nextDouble() < missing ? Utils.missingValue() : random.nextInt(GRID);
+        double colour = random.nextDouble() < missing ? Utils.missingValue() : random.nextInt(3);
+        double y = random.nextDouble() < missing ? Utils.missingValue() : random.nextInt(GRID) * 2.5;
+        double label = random.nextDouble() < (x + y / 2.5) / (2 * GRID) ? 1 : 0;
+        Instance instance = new DenseInstance(1.0, new double[]{x, colour, y, label});
+        instance.setDataset(header);
+        return instance;
+    }
+
+    private static Instances data(int n, long seed, double missing) {
+        Instances data = header();
+        Random random = new Random(seed);
+        // Corner rows pin the ranges: x in [0, GRID - 1], y in [0, 2.5 * (GRID - 1)].
+        data.add(new DenseInstance(1.0, new double[]{0, 0, 0, 0}));
+        data.add(new DenseInstance(1.0, new double[]{GRID - 1, 2, 2.5 * (GRID - 1), 1}));
+        while (data.numInstances() < n) {
+            data.add(row(data, random, missing));
+        }
+        return data;
+    }
+
+    private static void assertSamePredictions(String message, Classifier expected, Classifier actual,
+                                              Instances queries) throws Exception {
+        for (int i = 0; i < queries.numInstances(); i++) {
+            Instance query = queries.instance(i);
+            assertArrayEquals(message + " query " + i + " " + query, expected.distributionForInstance(query),
+                    actual.distributionForInstance(query), 1e-9);
+        }
+    }
+
+    private static Classifier ibk(int k, KdTreeKnn.Distance distance, boolean normalize) throws Exception {
+        return new KnnSettings(k, distance, normalize, KnnSettings.Search.LINEAR).newClassifier();
+    }
+
+    @Test
+    public void matchesIBkWithTiesMissingValuesAndNominalFeatures() throws Exception {
+        Instances train = data(400, 1, 0.1);
+        Instances queries = data(300, 2, 0.1);
+        for (KdTreeKnn.Distance distance : KdTreeKnn.Distance.values()) {
+            for (boolean normalize : new boolean[]{true, false}) {
+                for (int k : new int[]{1, 3, 5}) {
+                    Classifier expected = ibk(k, distance, normalize);
+                    expected.buildClassifier(train);
+                    KdTreeKnn actual = new KdTreeKnn(k, distance, normalize);
+                    actual.buildClassifier(train);
+                    assertSamePredictions(distance + " normalize=" + normalize + " k=" + k, expected, actual,
+                            queries);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void matchesIBkWithoutMissingValues() throws Exception {
+        Instances train = data(2000, 3, 0);
+        Instances queries = data(300, 4, 0);
+        for (int k : new int[]{1, 3, 5}) {
+            Classifier expected = ibk(k, KdTreeKnn.Distance.EUCLIDEAN, true);
+            expected.buildClassifier(train);
+            KdTreeKnn actual = new KdTreeKnn(k, KdTreeKnn.Distance.EUCLIDEAN, true);
+            actual.buildClassifier(train);
+            assertSamePredictions("k=" + k, expected, actual, queries);
+        }
+    }
+
+    @Test
+    public void matchesIBkAfterUpdatesPastTheRebuildThreshold() throws Exception {
+        Instances train = data(200, 5, 0.05);
+        Instances updates = data(3000, 6, 0.05);
+        Instances queries = data(200, 7, 0.05);
+        for (int k : new int[]{1, 3, 5}) {
+            Classifier expected = ibk(k, KdTreeKnn.Distance.EUCLIDEAN, true);
+            expected.buildClassifier(train);
+            KdTreeKnn actual = new KdTreeKnn(k, KdTreeKnn.Distance.EUCLIDEAN, true);
+            actual.buildClassifier(train);
+
+            // 1024 rows stay in the linear list; the 1025th triggers a rebuild, and so on.
+            for (int i = 0; i < updates.numInstances(); i++) {
+                ((UpdateableClassifier) expected).updateClassifier(updates.instance(i));
+                actual.updateClassifier(updates.instance(i));
+                if (i == 500 || i == 1024 || i == 1025 || i == updates.numInstances() - 1) {
+                    assertSamePredictions("k=" + k + " after " + (i + 1) + " updates", expected, actual, queries);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+import weka.classifiers.evaluation.NominalPrediction;
+import weka.classifiers.evaluation.Prediction;
+import weka.classifiers.evaluation.ThresholdCurve;
+import weka.core.Instances;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RocCurveTest {
+
+    private static final double EPSILON = 1e-12;
+
+    private static ArrayList<Prediction> predictions(double[] scores, int[] actual, double[] weights) {
+        ArrayList<Prediction> predictions = new ArrayList<>();
+        for (int i = 0; i < scores.length; i++) {
+            predictions.add(new NominalPrediction(actual[i], new double[]{1 - scores[i], scores[i]},
+                    weights != null ? weights[i] : 1));
+        }
+        return predictions;
+    }
+
+    private static ArrayList<Prediction> randomPredictions(int n, int distinctScores, boolean weighted, long seed) {
+        Random random = new Random(seed);
+        double[] scores = new double[n];
+        int[] actual = new int[n];
+        double[] weights = weighted ? new double[n] : null;
+        for (int i = 0; i < n; i++) {
+            scores[i] = distinctScores > 0 ? random.nextInt(distinctScores + 1) / (double) distinctScores
+                    : random.nextDouble();
+            actual[i] = random.nextDouble() < 0.2 + 0.6 * scores[i] ? 1 : 0;
+            if (weighted) {
+                weights[i] = 0.25 + random.nextInt(8) * 0.5;
+            }
+        }
+        return predictions(scores, actual, weights);
+    }
+
+    // ThresholdCurve lists the points from the lowest threshold up; RocCurve from the highest down.
+    private static void assertMatchesThresholdCurve(ArrayList<Prediction> predictions) {
+        Instances curve = new ThresholdCurve().getCurve(predictions, 1);
+        RocCurve roc = RocCurve.fromPredictions(predictions, 1);
+        assertEquals(ThresholdCurve.getROCArea(curve), roc.auc(), EPSILON);
+
+        int fprIndex = curve.attribute(ThresholdCurve.FP_RATE_NAME).index();
+        int tprIndex = curve.attribute(ThresholdCurve.TP_RATE_NAME).index();
+        double[][] points = roc.points();
+        assertEquals(curve.numInstances(), points[0].length);
+        for (int i = 0; i < points[0].length; i++) {
+            int w = curve.numInstances() - 1 - i;
+            assertEquals("fpr at " + i, curve.instance(w).value(fprIndex), points[0][i], EPSILON);
+            assertEquals("tpr at " + i, curve.instance(w).value(tprIndex), points[1][i], EPSILON);
+        }
+    }
+
+    @Test
+    public void untiedScoresMatchThresholdCurve() {
+        assertMatchesThresholdCurve(randomPredictions(5000, 0, false, 1));
+    }
+
+    @Test
+    public void tiedScoresMatchThresholdCurve() {
+        assertMatchesThresholdCurve(randomPredictions(5000, 20, false, 2));
+        assertMatchesThresholdCurve(predictions(new double[]{0.9, 0.8, 0.8, 0.3, 0.1, 0.8},
+                new int[]{1, 1, 0, 1, 0, 0}, null));
+    }
+
+    @Test
+    public void weightsMatchThresholdCurve() {
+        assertMatchesThresholdCurve(randomPredictions(5000, 0, true, 3));
+        assertMatchesThresholdCurve(randomPredictions(5000, 20, true, 4));
+    }
+
+    @Test
+    public void allScoresTied() {
+        RocCurve roc = RocCurve.fromPredictions(predictions(new double[]{0.5, 0.5, 0.5, 0.5},
+                new int[]{1, 0, 1, 0}, null), 1);
+        assertEquals(0.5, roc.auc(), EPSILON);
+        assertArrayEquals(new double[]{0, 1}, roc.points()[0], EPSILON);
+        assertArrayEquals(new double[]{0, 1}, roc.points()[1], EPSILON);
+    }
+
+    @Test
+    public void singleClassHasNoAuc() {
+        ArrayList<Prediction> positivesOnly = predictions(new double[]{0.9, 0.4, 0.4},
+                new int[]{1, 1, 1}, null);
+        assertTrue(Double.isNaN(ThresholdCurve.getROCArea(new ThresholdCurve().getCurve(positivesOnly, 1))));
+        RocCurve roc = RocCurve.fromPredictions(positivesOnly, 1);
+        assertTrue(Double.isNaN(roc.auc()));
+        assertEquals(3, roc.positives());
+        assertEquals(0, roc.negatives());
+        assertArrayEquals(new double[]{0, 1.0 / 3, 1}, roc.points()[1], EPSILON);
+
+        RocCurve negativesOnly = RocCurve.fromPredictions(predictions(new double[]{0.9, 0.4},
+                new int[]{0, 0}, null), 1);
+        assertTrue(Double.isNaN(negativesOnly.auc()));
+        assertArrayEquals(new double[]{0, 0.5, 1}, negativesOnly.points()[0], EPSILON);
+        assertArrayEquals(new double[]{0, 0, 0}, negativesOnly.points()[1], EPSILON);
+    }
+
+    @Test
+    public void downsampleStaysWithinTolerance() {
+        RocCurve roc = RocCurve.fromPredictions(randomPredictions(20000, 0, false, 5), 1);
+        double[][] points = roc.points();
+        double tolerance = 1e-3;
+        double[][] kept = roc.downsample(tolerance, Integer.MAX_VALUE);
+        assertTrue(kept[0].length < points[0].length);
+        assertEquals(points[0][0], kept[0][0], 0);
+        assertEquals(points[0][points[0].length - 1], kept[0][kept[0].length - 1], 0);
+
+        // Kept points are a subsequence; every dropped point lies near the segment spanning it.
+        int k = 0;
+        for (int i = 0; i < points[0].length; i++) {
+            if (k < kept[0].length && points[0][i] == kept[0][k] && points[1][i] == kept[1][k]) {
+                k++;
+                continue;
+            }
+            double x0 = kept[0][k - 1];
+            double y0 = kept[1][k - 1];
+            double dx = kept[0][k] - x0;
+            double dy = kept[1][k] - y0;
+            double length = Math.sqrt(dx * dx + dy * dy);
+            double distance = length > 0 ? Math.abs(dy * (points[0][i] - x0) - dx * (points[1][i] - y0)) / length
+                    : Math.hypot(points[0][i] - x0, points[1][i] - y0);
+            assertTrue("point " + i + " is " + distance + " away", distance <= tolerance);
+        }
+        assertEquals(kept[0].length, k);
+    }
+
+    @Test
+    public void downsampleRespectsMaxPoints() {
+        RocCurve roc = RocCurve.fromPredictions(randomPredictions(20000, 0, false, 6), 1);
+        double[][] kept = roc.downsample(1e-9, 50);
+        assertTrue(kept[0].length <= 50);
+        assertEquals(0, kept[0][0], 0);
+        assertEquals(1, kept[0][kept[0].length - 1], 0);
+        assertEquals(1, kept[1][kept[1].length - 1], 0);
+    }
+
+    @Test
+    public void tprAtInterpolatesAndTakesTopOfVerticalRises() {
+        // Points (0,0) (0,1/3) (2/3,2/3) (2/3,1) (1,1).
+        RocCurve roc = RocCurve.fromPredictions(predictions(new double[]{0.9, 0.8, 0.8, 0.3, 0.1, 0.8},
+                new int[]{1, 1, 0, 1, 0, 0}, null), 1);
+        double[] tpr = roc.tprAt(new double[]{0, 1.0 / 3, 0.5, 2.0 / 3, 0.9, 1});
+        assertArrayEquals(new double[]{1.0 / 3, 0.5, 7.0 / 12, 1, 1, 1}, tpr, EPSILON);
+    }
+}
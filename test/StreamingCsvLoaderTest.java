@@ -0,0 +1,107 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamingCsvLoaderTest {
+
+    private static double parse(String text) {
+        byte[] buf = text.getBytes(StandardCharsets.US_ASCII);
+        return StreamingCsvLoader.parseNumber(buf, buf.length);
+    }
+
+    private static void assertSameAsParseDouble(String text) {
+        assertEquals(text, Double.doubleToLongBits(Double.parseDouble(text)), Double.doubleToLongBits(parse(text)));
+    }
+
+    @Test
+    public void fastPathRoundsLikeParseDouble() {
+        String[] values = {"0", "-0", "+7", "0.1", "0.2", "0.3", "1.005", "123456789012345", "0.000123456789012345",
+                "9007199254740993", "1e22", "1e23", "1e-22", "4.35e-5", "-2.5E+3", "17.0", "000012.500",
+                "123456789.123456", "1234567890123456789", "2.2250738585072014e-308", "1.7976931348623157e308"};
+        for (String value : values) {
+            assertSameAsParseDouble(value);
+        }
+
+        Random random = new Random(1);
+        for (int n = 0; n < 100000; n++) {
+            long mantissa = random.nextLong() % 1000000000000000L;
+            int decimals = random.nextInt(16);
+            StringBuilder text = new StringBuilder(Long.toString(Math.abs(mantissa)));
+            while (text.length() <= decimals) {
+                text.insert(0, '0');
+            }
+            if (decimals > 0) {
+                text.insert(text.length() - decimals, '.');
+            }
+            if (mantissa < 0) {
+                text.insert(0, '-');
+            }
+            if (random.nextBoolean()) {
+                text.append('e').append(random.nextInt(45) - 22);
+            }
+            assertSameAsParseDouble(text.toString());
+        }
+    }
+
+    @Test
+    public void acceptsEmptyDigitRunsAroundThePoint() {
+        assertEquals(0.5, parse(".5"), 0);
+        assertEquals(-0.25, parse("-.25"), 0);
+        assertEquals(1.0, parse("1."), 0);
+        assertEquals(150.0, parse("1.5e2"), 0);
+        assertEquals(20.0, parse("2.e1"), 0);
+        assertSameAsParseDouble(".1");
+        assertSameAsParseDouble("-.000123456789012345");
+    }
+
+    @Test
+    public void columnWithoutLeadingZerosStaysNumeric() throws Exception {
+        File csv = File.createTempFile("leading-point", ".csv");
+        try {
+            Files.write(csv.toPath(), "Mass,Migratory status\n.5,Resident\n1.,Migratory\n-.25,Resident\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            ColumnStore store = new StreamingCsvLoader("Migratory status").load(csv);
+            assertEquals(Arrays.asList("Mass"), store.numericAttributeNames());
+            assertEquals(0.5, store.column("Mass")[0], 0);
+            assertEquals(1.0, store.column("Mass")[1], 0);
+            assertEquals(-0.25, store.column("Mass")[2], 0);
+        } finally {
+            csv.delete();
+        }
+    }
+
+    @Test
+    public void trimsSpaces() {
+        assertEquals(12.5, parse("  12.5 "), 0);
+    }
+
+    @Test
+    public void emptyAndQuestionMarkAreMissing() {
+        assertTrue(Double.isNaN(parse("")));
+        assertTrue(Double.isNaN(parse("   ")));
+        assertTrue(Double.isNaN(parse("?")));
+        assertTrue(Double.isNaN(parse(" ? ")));
+    }
+
+    @Test
+    public void rejectsTextParseDoubleWouldAccept() {
+        String[] invalid = {"NaN", "Infinity", "-Infinity", "1d", "1f", "2D", "0x1p3", "0x10", ".", "-.", ".e5", "-",
+                "+", "1e", "1e+", "e5", "1.2.3", "1 2", "12a", "--1", "1e5.5", "??"};
+        for (String value : invalid) {
+            try {
+                double parsed = parse(value);
+                fail(value + " parsed as " + parsed);
+            } catch (NumberFormatException expected) {
+                // expected
+            }
+        }
+    }
+}